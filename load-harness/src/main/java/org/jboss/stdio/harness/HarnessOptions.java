@@ -0,0 +1,85 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio.harness;
+
+import java.util.Locale;
+
+/**
+ * The command line options of the harness.
+ */
+final class HarnessOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadHarness [options]",
+            "  --mode=load|startup          run the load test (default) or measure install() to first print",
+            "  --threads=N                  number of printing threads (default 200)",
+            "  --virtual                    use virtual threads (Java 21 and later)",
+            "  --line-size=N                characters per printed line (default 80)",
+            "  --sink=null|file|logging|json|slow_pipe",
+            "                               where the installed context writes to (default logging)",
+            "  --slow-pipe-rate=N           bytes per second consumed by the slow pipe (default 1048576)",
+            "  --atomic-lines               install the streams in atomic-line mode",
+            "  --warmup=SECONDS             warm-up time before measuring (default 5)",
+            "  --duration=SECONDS           measurement time (default 10)");
+
+    String mode = "load";
+    int threads = 200;
+    boolean virtual;
+    int lineSize = 80;
+    SinkType sink = SinkType.LOGGING;
+    long slowPipeBytesPerSecond = 1024L * 1024L;
+    boolean atomicLines;
+    int warmupSeconds = 5;
+    int durationSeconds = 10;
+
+    static HarnessOptions parse(final String[] args) {
+        final HarnessOptions options = new HarnessOptions();
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            final String name = eq == -1 ? arg : arg.substring(0, eq);
+            final String value = eq == -1 ? null : arg.substring(eq + 1);
+            switch (name) {
+                case "--mode":
+                    options.mode = required(name, value);
+                    break;
+                case "--threads":
+                    options.threads = Integer.parseInt(required(name, value));
+                    break;
+                case "--virtual":
+                    options.virtual = true;
+                    break;
+                case "--line-size":
+                    options.lineSize = Integer.parseInt(required(name, value));
+                    break;
+                case "--sink":
+                    options.sink = SinkType.valueOf(required(name, value).toUpperCase(Locale.ROOT));
+                    break;
+                case "--slow-pipe-rate":
+                    options.slowPipeBytesPerSecond = Long.parseLong(required(name, value));
+                    break;
+                case "--atomic-lines":
+                    options.atomicLines = true;
+                    break;
+                case "--warmup":
+                    options.warmupSeconds = Integer.parseInt(required(name, value));
+                    break;
+                case "--duration":
+                    options.durationSeconds = Integer.parseInt(required(name, value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return options;
+    }
+
+    private static String required(final String name, final String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Option " + name + " requires a value");
+        }
+        return value;
+    }
+}
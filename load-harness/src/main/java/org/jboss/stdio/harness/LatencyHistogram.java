@@ -0,0 +1,92 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio.harness;
+
+/**
+ * A log-linear histogram of nanosecond latencies. Each power of two is split into 32 linear sub-buckets, which bounds
+ * the relative error of a reported value to about 3%. Recording does not allocate; an instance is meant to be used by
+ * one thread and merged afterwards.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long total;
+    private long max;
+    private long sum;
+
+    void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void add(final LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return total;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return total == 0L ? 0.0 : (double) sum / total;
+    }
+
+    /**
+     * Get the value at the given percentile, reported as the upper bound of its bucket.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value in nanoseconds
+     */
+    long getValueAtPercentile(final double percentile) {
+        if (total == 0L) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, upperBound(i));
+            }
+        }
+        return max;
+    }
+
+    private static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long sub = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exponent - SUB_BUCKET_BITS)) - 1L;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio.harness;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.stdio.NullInputStream;
+import org.jboss.stdio.SimpleStdioContextSelector;
+import org.jboss.stdio.StdioContext;
+
+/**
+ * A load generator which prints from many threads through the installed {@link StdioContext} streams and reports
+ * throughput, the latency distribution of single {@code println} calls, and the time the printing threads spent
+ * blocked on or waiting for locks.
+ */
+public final class LoadHarness {
+
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9, 99.99 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9", "p99.99" };
+
+    private volatile boolean running = true;
+    private volatile boolean measuring;
+
+    private LoadHarness() {
+    }
+
+    /**
+     * Run the harness.
+     *
+     * @param args the command line options, see {@code --help}
+     * @throws Exception if the harness fails
+     */
+    public static void main(final String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(HarnessOptions.USAGE);
+            return;
+        }
+        final HarnessOptions options;
+        try {
+            options = HarnessOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(HarnessOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        if ("startup".equals(options.mode)) {
+            startup(System.out);
+        } else {
+            try {
+                new LoadHarness().load(options, System.out);
+            } catch (UnsupportedOperationException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Measure the time from {@link StdioContext#install()} to the first byte of a redirected print arriving at the
+     * context's stream. Run it in a fresh JVM or native image, as it includes class loading and initialization.
+     */
+    private static void startup(final PrintStream report) {
+        final long[] arrived = new long[1];
+        final OutputStream first = new OutputStream() {
+            public void write(final int b) {
+                if (arrived[0] == 0L) {
+                    arrived[0] = System.nanoTime();
+                }
+            }
+
+            public void write(final byte[] b, final int off, final int len) {
+                write(0);
+            }
+        };
+        final long start = System.nanoTime();
+        StdioContext.install();
+        StdioContext.setStdioContextSelector(
+                new SimpleStdioContextSelector(StdioContext.create(NullInputStream.getInstance(), first, first)));
+        System.out.println("first");
+        StdioContext.uninstall();
+        report.printf("install() to first redirected print: %.1f us%n", (arrived[0] - start) / 1000.0);
+    }
+
+    private void load(final HarnessOptions options, final PrintStream report) throws Exception {
+        final OutputStream sink = options.sink.open(options);
+        final char[] chars = new char[options.lineSize];
+        Arrays.fill(chars, 'x');
+        final String line = new String(chars);
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final boolean contention = !options.virtual && threadBean.isThreadContentionMonitoringSupported();
+        if (contention) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        StdioContext.install(options.atomicLines);
+        StdioContext.setStdioContextSelector(
+                new SimpleStdioContextSelector(StdioContext.create(NullInputStream.getInstance(), sink, sink)));
+        final LatencyHistogram[] histograms = new LatencyHistogram[options.threads];
+        final Thread[] threads = new Thread[options.threads];
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                final LatencyHistogram histogram = histograms[i] = new LatencyHistogram();
+                final Runnable task = new Runnable() {
+                    public void run() {
+                        while (running) {
+                            final long start = System.nanoTime();
+                            System.out.println(line);
+                            final long elapsed = System.nanoTime() - start;
+                            if (measuring) {
+                                histogram.record(elapsed);
+                            }
+                        }
+                    }
+                };
+                threads[i] = options.virtual ? VirtualThreads.unstarted(task) : new Thread(task, "printer-" + i);
+                threads[i].setDaemon(true);
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            TimeUnit.SECONDS.sleep(options.warmupSeconds);
+            final long[] ids = contention ? threadIds(threads) : null;
+            final long lockStart = contention ? lockTimeMillis(threadBean, ids) : 0L;
+            measuring = true;
+            final long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(options.durationSeconds);
+            measuring = false;
+            final long elapsed = System.nanoTime() - start;
+            final long lockTime = contention ? lockTimeMillis(threadBean, ids) - lockStart : -1L;
+            running = false;
+            for (Thread thread : threads) {
+                // a stalled sink may never let a printer return
+                thread.join(1000L);
+            }
+            final LatencyHistogram total = new LatencyHistogram();
+            for (LatencyHistogram histogram : histograms) {
+                total.add(histogram);
+            }
+            report(report, options, total, elapsed, lockTime);
+        } finally {
+            running = false;
+            StdioContext.uninstall();
+        }
+    }
+
+    private static long[] threadIds(final Thread[] threads) {
+        final long[] ids = new long[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            ids[i] = threads[i].getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Get the total time the given threads spent blocked on monitors or waiting, for example for a
+     * {@code java.util.concurrent} lock, in milliseconds.
+     */
+    private static long lockTimeMillis(final ThreadMXBean threadBean, final long[] ids) {
+        long total = 0L;
+        for (ThreadInfo info : threadBean.getThreadInfo(ids)) {
+            if (info != null) {
+                total += Math.max(0L, info.getBlockedTime()) + Math.max(0L, info.getWaitedTime());
+            }
+        }
+        return total;
+    }
+
+    private static void report(final PrintStream out, final HarnessOptions options, final LatencyHistogram histogram,
+            final long elapsedNanos, final long lockTimeMillis) {
+        final double seconds = elapsedNanos / 1e9;
+        out.printf("threads=%d (%s) line-size=%d sink=%s atomic-lines=%s duration=%.1fs%n", options.threads,
+                options.virtual ? "virtual" : "platform", options.lineSize, options.sink.name().toLowerCase(),
+                options.atomicLines, seconds);
+        out.printf("throughput: %.0f lines/s, %.1f MiB/s%n", histogram.getCount() / seconds,
+                histogram.getCount() * (options.lineSize + 1L) / seconds / (1024 * 1024));
+        out.printf("latency: mean %.1f us", histogram.getMean() / 1000.0);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            out.printf(", %s %.1f us", PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+        }
+        out.printf(", max %.1f us%n", histogram.getMax() / 1000.0);
+        if (lockTimeMillis < 0L) {
+            out.println("lock wait: not available for virtual threads or on this JVM");
+        } else {
+            out.printf("lock wait: %d ms total, %.1f%% of printer thread time%n", lockTimeMillis,
+                    100.0 * lockTimeMillis / (options.threads * seconds * 1000.0));
+        }
+    }
+}
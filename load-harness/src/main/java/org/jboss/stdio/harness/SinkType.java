@@ -0,0 +1,130 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio.harness;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.jboss.stdio.JsonLinesOutputStream;
+import org.jboss.stdio.LoggingOutputStream;
+import org.jboss.stdio.NullOutputStream;
+
+/**
+ * The sinks the harness can print into.
+ */
+enum SinkType {
+    /**
+     * Discard everything; measures the cost of the stdio layer itself.
+     */
+    NULL {
+        OutputStream open(final HarnessOptions options) {
+            return NullOutputStream.getInstance();
+        }
+    },
+    /**
+     * Append to a temporary file.
+     */
+    FILE {
+        OutputStream open(final HarnessOptions options) throws IOException {
+            final Path file = Files.createTempFile("stdio-harness", ".log");
+            file.toFile().deleteOnExit();
+            return new FileOutputStream(file.toFile());
+        }
+    },
+    /**
+     * Log through a {@link LoggingOutputStream} to a handler which formats the records and discards the result.
+     */
+    LOGGING {
+        OutputStream open(final HarnessOptions options) {
+            final Logger logger = Logger.getLogger("org.jboss.stdio.harness.sink");
+            logger.setUseParentHandlers(false);
+            final Handler handler = new Handler() {
+                public void publish(final LogRecord record) {
+                    // pay for formatting like a real handler would, then discard
+                    getFormatter().format(record);
+                }
+
+                public void flush() {
+                }
+
+                public void close() {
+                }
+            };
+            handler.setFormatter(new SimpleFormatter());
+            logger.addHandler(handler);
+            return new LoggingOutputStream(logger, java.util.logging.Level.INFO);
+        }
+    },
+    /**
+     * Encode each line as JSON with a {@link JsonLinesOutputStream} into a channel which discards the result; the
+     * counterpart of {@link #LOGGING} without {@code java.util.logging}.
+     */
+    JSON {
+        OutputStream open(final HarnessOptions options) {
+            final WritableByteChannel discard = new WritableByteChannel() {
+                public int write(final ByteBuffer src) {
+                    final int cnt = src.remaining();
+                    src.position(src.limit());
+                    return cnt;
+                }
+
+                public boolean isOpen() {
+                    return true;
+                }
+
+                public void close() {
+                }
+            };
+            // the context's print streams encode with the default charset
+            return new JsonLinesOutputStream(discard, "org.jboss.stdio.harness.sink", "INFO", "out",
+                    Charset.defaultCharset());
+        }
+    },
+    /**
+     * Write into a pipe whose reader only consumes a limited number of bytes per second, standing in for a slow log
+     * collector on the other end of fd 1.
+     */
+    SLOW_PIPE {
+        OutputStream open(final HarnessOptions options) throws IOException {
+            final Pipe pipe = Pipe.open();
+            final long bytesPerSecond = options.slowPipeBytesPerSecond;
+            final Thread reader = new Thread(new Runnable() {
+                public void run() {
+                    final ByteBuffer buffer = ByteBuffer.allocate(4096);
+                    try {
+                        for (;;) {
+                            buffer.clear();
+                            final int cnt = pipe.source().read(buffer);
+                            if (cnt == -1) {
+                                return;
+                            }
+                            Thread.sleep(Math.max(1L, cnt * 1000L / bytesPerSecond));
+                        }
+                    } catch (IOException | InterruptedException ignored) {
+                    }
+                }
+            }, "slow-pipe-reader");
+            reader.setDaemon(true);
+            reader.start();
+            return Channels.newOutputStream(pipe.sink());
+        }
+    },
+    ;
+
+    abstract OutputStream open(HarnessOptions options) throws IOException;
+}
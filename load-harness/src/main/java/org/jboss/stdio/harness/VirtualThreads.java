@@ -0,0 +1,27 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio.harness;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates virtual threads reflectively, so the harness still compiles and runs its platform thread mode on Java 11.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static Thread unstarted(final Runnable task) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+        }
+    }
+}
@@ -65,6 +65,26 @@ public abstract class AbstractLoggingWriter extends Writer {
         // ignore
     }
 
+    /**
+     * Log the partial line in the buffer, if any, as a complete line.
+     *
+     * @return the partial line, or {@code null} if there was none
+     */
+    String flushPartialLine() {
+        final java.util.logging.Logger logger = getLogger();
+        synchronized (buffer) {
+            if (buffer.length() == 0) {
+                return null;
+            }
+            final String partialLine = buffer.toString();
+            buffer.setLength(0);
+            if (logger != null) {
+                logger.log(getLevel(), partialLine);
+            }
+            return partialLine;
+        }
+    }
+
     /**
      * Get the logger to use.
      *
@@ -0,0 +1,159 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer which removes ANSI escape sequences, such as color codes, before passing text on to another writer. CSI
+ * sequences ({@code ESC [} ... final byte), OSC, DCS, SOS, PM and APC strings (terminated by {@code BEL} or
+ * {@code ESC \}), their single-character C1 forms and other two-character escapes are removed. A sequence or string
+ * which is still unterminated at the end of the line is abandoned there. Sequences may be split across writes; runs of
+ * plain text are passed on without copying.
+ */
+public final class AnsiStrippingWriter extends Writer {
+
+    private static final int TEXT = 0;
+    private static final int ESC = 1;
+    private static final int ESC_INTERMEDIATE = 2;
+    private static final int CSI = 3;
+    private static final int STRING = 4;
+    private static final int STRING_ESC = 5;
+
+    private final Writer delegate;
+    // guarded by lock
+    private int state = TEXT;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param delegate the writer to pass the plain text to
+     */
+    public AnsiStrippingWriter(final Writer delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int c) throws IOException {
+        synchronized (lock) {
+            if (next((char) c)) {
+                delegate.write(c);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        synchronized (lock) {
+            final int end = off + len;
+            int mark = off;
+            for (int i = off; i < end; i++) {
+                if (!next(cbuf[i])) {
+                    if (i > mark) {
+                        delegate.write(cbuf, mark, i - mark);
+                    }
+                    mark = i + 1;
+                }
+            }
+            if (end > mark) {
+                delegate.write(cbuf, mark, end - mark);
+            }
+        }
+    }
+
+    /**
+     * Advance the state machine by one character.
+     *
+     * @return {@code true} if the character is plain text
+     */
+    private boolean next(final char c) {
+        if (c == '\n') {
+            // an unterminated sequence must not swallow the rest of the output
+            state = TEXT;
+            return true;
+        }
+        switch (state) {
+            case TEXT: {
+                if (c == 0x1b) {
+                    state = ESC;
+                } else if (c == 0x9b) {
+                    state = CSI;
+                } else if (c == 0x90 || c == 0x98 || c == 0x9d || c == 0x9e || c == 0x9f) {
+                    state = STRING;
+                } else {
+                    return true;
+                }
+                return false;
+            }
+            case ESC: {
+                if (c == '[') {
+                    state = CSI;
+                } else if (c == ']' || c == 'P' || c == 'X' || c == '^' || c == '_') {
+                    state = STRING;
+                } else if (c >= 0x20 && c <= 0x2f) {
+                    state = ESC_INTERMEDIATE;
+                } else if (c != 0x1b) {
+                    state = TEXT;
+                }
+                return false;
+            }
+            case ESC_INTERMEDIATE: {
+                if (c == 0x1b) {
+                    state = ESC;
+                } else if (c < 0x20 || c > 0x2f) {
+                    state = TEXT;
+                }
+                return false;
+            }
+            case CSI: {
+                if (c == 0x1b) {
+                    state = ESC;
+                } else if (c >= 0x40 && c <= 0x7e) {
+                    state = TEXT;
+                } else if (c < 0x20) {
+                    // control characters inside a sequence still take effect
+                    return true;
+                }
+                return false;
+            }
+            case STRING: {
+                if (c == 0x07 || c == 0x9c) {
+                    state = TEXT;
+                } else if (c == 0x1b) {
+                    state = STRING_ESC;
+                }
+                return false;
+            }
+            case STRING_ESC: {
+                if (c == '\\') {
+                    state = TEXT;
+                } else if (c != 0x1b) {
+                    state = STRING;
+                }
+                return false;
+            }
+            default: {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    Writer getDelegate() {
+        return delegate;
+    }
+
+    /** {@inheritDoc} */
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An output stream which hands its data to a background thread for delivery to a sink. Writers only copy into a bounded
+ * buffer; when the buffer is full, the configured {@link OverflowPolicy} decides what happens to the excess data, so a
+ * slow sink can never stall writers for longer than the policy allows.
+ * <p>
+ * Calls to {@link #flush()} do not wait for the sink; they only ask the delivery thread to flush the sink once the
+ * buffered data has been written. Use {@link #drain(long, TimeUnit)} to wait for delivery with a deadline.
+ */
+public final class AsyncOutputStream extends OutputStream {
+
+    /**
+     * The policy applied when a write does not fit into the buffer.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the writer until space is available or the block timeout expires; data which still does not fit after
+         * the timeout is dropped.
+         */
+        BLOCK,
+        /**
+         * Drop the data which does not fit.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest buffered data to make room for the new data.
+         */
+        DROP_OLDEST,
+        /**
+         * Append the data which does not fit to a spill file.
+         */
+        SPILL,
+    }
+
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final OutputStream sink;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final File spillFile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    private final byte[] buffer;
+    // all guarded by lock
+    private int head;
+    private int count;
+    private boolean flushRequested;
+    private boolean delivering;
+    private boolean closed;
+    private OutputStream spillStream;
+
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong failedBytes = new AtomicLong();
+    private volatile Exception lastFailure;
+    private volatile IOException closeFailure;
+
+    private final Thread thread;
+
+    private AsyncOutputStream(final OutputStream sink, final int capacity, final OverflowPolicy policy,
+            final long blockTimeoutNanos, final File spillFile) {
+        if (sink == null) {
+            throw new NullPointerException("sink is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.sink = sink;
+        this.policy = policy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+        this.spillFile = spillFile;
+        buffer = new byte[capacity];
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    deliver();
+                } finally {
+                    closeSink();
+                }
+            }
+        }, "stdio-async-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Create a stream which blocks writers for at most the given time when the buffer is full, dropping the data which
+     * still does not fit afterwards.
+     *
+     * @param sink     the sink to deliver to
+     * @param capacity the buffer capacity in bytes
+     * @param timeout  the maximum time a single write may block
+     * @param unit     the unit of the timeout
+     * @return the new stream
+     */
+    public static AsyncOutputStream blocking(final OutputStream sink, final int capacity, final long timeout,
+            final TimeUnit unit) {
+        return new AsyncOutputStream(sink, capacity, OverflowPolicy.BLOCK, unit.toNanos(timeout), null);
+    }
+
+    /**
+     * Create a stream which drops newly written data when the buffer is full.
+     *
+     * @param sink     the sink to deliver to
+     * @param capacity the buffer capacity in bytes
+     * @return the new stream
+     */
+    public static AsyncOutputStream droppingNewest(final OutputStream sink, final int capacity) {
+        return new AsyncOutputStream(sink, capacity, OverflowPolicy.DROP_NEWEST, 0L, null);
+    }
+
+    /**
+     * Create a stream which discards the oldest buffered data when the buffer is full.
+     *
+     * @param sink     the sink to deliver to
+     * @param capacity the buffer capacity in bytes
+     * @return the new stream
+     */
+    public static AsyncOutputStream droppingOldest(final OutputStream sink, final int capacity) {
+        return new AsyncOutputStream(sink, capacity, OverflowPolicy.DROP_OLDEST, 0L, null);
+    }
+
+    /**
+     * Create a stream which appends data that does not fit into the buffer to a local spill file.
+     *
+     * @param sink      the sink to deliver to
+     * @param capacity  the buffer capacity in bytes
+     * @param spillFile the file to append overflow data to (must not be {@code null})
+     * @return the new stream
+     */
+    public static AsyncOutputStream spilling(final OutputStream sink, final int capacity, final File spillFile) {
+        if (spillFile == null) {
+            throw new NullPointerException("spillFile is null");
+        }
+        return new AsyncOutputStream(sink, capacity, OverflowPolicy.SPILL, 0L, spillFile);
+    }
+
+    /**
+     * Get the overflow policy of this stream.
+     *
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the number of bytes dropped because of overflow.
+     *
+     * @return the number of dropped bytes
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    /**
+     * Get the number of bytes written to the spill file.
+     *
+     * @return the number of spilled bytes
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Get the number of bytes which could not be delivered because the sink failed.
+     *
+     * @return the number of failed bytes
+     */
+    public long getFailedBytes() {
+        return failedBytes.get();
+    }
+
+    /**
+     * Get the most recent failure of the sink or the spill file, if any. A sink which throws, whether a checked or an
+     * unchecked exception, does not stop the delivery of later data.
+     *
+     * @return the most recent failure, or {@code null} if the sink never failed
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) throws IOException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (count == buffer.length && !makeRoom(1, System.nanoTime())) {
+                spill(new byte[] { (byte) b }, 0, 1);
+                return;
+            }
+            buffer[(head + count) % buffer.length] = (byte) b;
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, int off, int len) throws IOException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            final byte[] buffer = this.buffer;
+            // a write blocks for at most the block timeout in total, however often it has to wait
+            final long start = System.nanoTime();
+            if (policy == OverflowPolicy.DROP_OLDEST && len > buffer.length) {
+                // only the most recent bytes can survive
+                droppedBytes.addAndGet(len - buffer.length);
+                off += len - buffer.length;
+                len = buffer.length;
+            }
+            while (len > 0) {
+                if (count == buffer.length && !makeRoom(len, start)) {
+                    // the remainder was dropped or is spilled
+                    spill(b, off, len);
+                    return;
+                }
+                final int tail = (head + count) % buffer.length;
+                final int cnt = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+                System.arraycopy(b, off, buffer, tail, cnt);
+                count += cnt;
+                off += cnt;
+                len -= cnt;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make room in a full buffer according to the overflow policy. Must be called with the lock held.
+     *
+     * @param len   the number of bytes the caller wants to write
+     * @param start the time at which the write started, from {@link System#nanoTime()}
+     * @return {@code true} if room was made, {@code false} if the caller should give up on the remaining bytes
+     */
+    private boolean makeRoom(final int len, final long start) throws IOException {
+        switch (policy) {
+            case BLOCK: {
+                long remaining = blockTimeoutNanos - (System.nanoTime() - start);
+                while (count == buffer.length) {
+                    if (remaining <= 0L || closed) {
+                        droppedBytes.addAndGet(len);
+                        return false;
+                    }
+                    try {
+                        remaining = notFull.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedBytes.addAndGet(len);
+                        return false;
+                    }
+                }
+                return true;
+            }
+            case DROP_OLDEST: {
+                final int cnt = Math.min(len, count);
+                head = (head + cnt) % buffer.length;
+                count -= cnt;
+                droppedBytes.addAndGet(cnt);
+                return true;
+            }
+            case SPILL: {
+                return false;
+            }
+            default: {
+                droppedBytes.addAndGet(len);
+                return false;
+            }
+        }
+    }
+
+    private void spill(final byte[] b, final int off, final int len) {
+        if (policy != OverflowPolicy.SPILL) {
+            return;
+        }
+        try {
+            OutputStream spillStream = this.spillStream;
+            if (spillStream == null) {
+                spillStream = this.spillStream = new FileOutputStream(spillFile, true);
+            }
+            spillStream.write(b, off, len);
+            spilledBytes.addAndGet(len);
+        } catch (IOException e) {
+            lastFailure = e;
+            droppedBytes.addAndGet(len);
+        }
+    }
+
+    /**
+     * Request that the sink be flushed once the currently buffered data has been delivered. This method does not wait.
+     */
+    public void flush() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            flushRequested = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the currently buffered data to be delivered to the sink.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return {@code true} if all data was delivered, {@code false} if the timeout expired first
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public boolean drain(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            flushRequested = true;
+            notEmpty.signal();
+            while (count > 0 || delivering || flushRequested) {
+                if (remaining <= 0L || !thread.isAlive()) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close this stream. Buffered data is delivered to the sink for at most one second; anything left undelivered
+     * after that is counted as dropped. The sink is closed by the delivery thread once it is done with the sink, so a
+     * sink which is still being written to when this method returns is closed when that write returns.
+     *
+     * @throws IOException if closing the spill file fails, or closing the sink failed before this method returned
+     */
+    public void close() throws IOException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushRequested = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (count > 0) {
+                droppedBytes.addAndGet(count);
+                head = count = 0;
+            }
+            if (spillStream != null) {
+                spillStream.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+        final IOException failure = closeFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void closeSink() {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            closeFailure = e;
+        } catch (RuntimeException e) {
+            closeFailure = new IOException("Failed to close the sink", e);
+        }
+    }
+
+    private void deliver() {
+        final byte[] transfer = new byte[Math.min(TRANSFER_SIZE, buffer.length)];
+        final ReentrantLock lock = this.lock;
+        for (;;) {
+            final int cnt;
+            final boolean flush;
+            lock.lock();
+            try {
+                delivering = false;
+                if (count == 0) {
+                    drained.signalAll();
+                }
+                while (count == 0 && !flushRequested) {
+                    if (closed) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                final byte[] buffer = this.buffer;
+                cnt = Math.min(transfer.length, count);
+                final int first = Math.min(cnt, buffer.length - head);
+                System.arraycopy(buffer, head, transfer, 0, first);
+                System.arraycopy(buffer, 0, transfer, first, cnt - first);
+                head = (head + cnt) % buffer.length;
+                count -= cnt;
+                // only flush once everything requested so far has been handed over
+                flush = flushRequested && count == 0;
+                if (flush) {
+                    flushRequested = false;
+                }
+                delivering = true;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (cnt > 0) {
+                    sink.write(transfer, 0, cnt);
+                }
+                if (flush) {
+                    sink.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                // the delivery thread must survive a broken sink, or every later write would be dropped unreported
+                lastFailure = e;
+                failedBytes.addAndGet(cnt);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output captured by {@link StdioContext#capture(Runnable)}.
+ */
+public final class CapturedOutput {
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final byte[] out;
+    private final byte[] err;
+
+    CapturedOutput(final byte[] out, final byte[] err) {
+        this.out = out.length == 0 ? NO_BYTES : out;
+        this.err = err.length == 0 ? NO_BYTES : err;
+    }
+
+    /**
+     * Get the bytes written to the output stream. The returned array is not copied and must not be modified.
+     *
+     * @return the output bytes
+     */
+    public byte[] getOut() {
+        return out;
+    }
+
+    /**
+     * Get the bytes written to the error stream. The returned array is not copied and must not be modified.
+     *
+     * @return the error bytes
+     */
+    public byte[] getErr() {
+        return err;
+    }
+
+    /**
+     * Get the lines written to the output stream, decoded with the default charset.
+     *
+     * @return the output lines
+     */
+    public List<String> getOutLines() {
+        return lines(out);
+    }
+
+    /**
+     * Get the lines written to the error stream, decoded with the default charset.
+     *
+     * @return the error lines
+     */
+    public List<String> getErrLines() {
+        return lines(err);
+    }
+
+    private static List<String> lines(final byte[] bytes) {
+        final Charset charset = Charset.defaultCharset();
+        final List<String> lines = new ArrayList<String>();
+        int mark = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                final int end = i > mark && bytes[i - 1] == '\r' ? i - 1 : i;
+                lines.add(new String(bytes, mark, end - mark, charset));
+                mark = i + 1;
+            }
+        }
+        if (mark < bytes.length) {
+            lines.add(new String(bytes, mark, bytes.length - mark, charset));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An input stream which reads from a channel through a large buffer. Reads which are at least as large as the buffer
+ * bypass it and go to the channel directly. If the channel is an {@link java.nio.channels.InterruptibleChannel
+ * InterruptibleChannel}, such as a {@link java.nio.channels.Pipe.SourceChannel Pipe.SourceChannel}, a blocked read can
+ * be interrupted; note that this closes the channel.
+ */
+public final class ChannelInputStream extends InputStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private final ReadableByteChannel channel;
+    // guarded by this; kept in read mode
+    private final ByteBuffer buffer;
+
+    /**
+     * Construct a new instance with a 64 KiB buffer.
+     *
+     * @param channel the channel to read from
+     */
+    public ChannelInputStream(final ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param channel    the channel to read from
+     * @param bufferSize the size of the read buffer in bytes
+     */
+    public ChannelInputStream(final ReadableByteChannel channel, final int bufferSize) {
+        if (channel == null) {
+            throw new NullPointerException("channel is null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int read() throws IOException {
+        final ByteBuffer buffer = this.buffer;
+        if (!buffer.hasRemaining() && fill() == -1) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer.hasRemaining()) {
+            final int cnt = Math.min(len, buffer.remaining());
+            buffer.get(b, off, cnt);
+            return cnt;
+        }
+        if (len >= buffer.capacity()) {
+            return readSome(ByteBuffer.wrap(b, off, len));
+        }
+        if (fill() == -1) {
+            return -1;
+        }
+        final int cnt = Math.min(len, buffer.remaining());
+        buffer.get(b, off, cnt);
+        return cnt;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long transferTo(final OutputStream out) throws IOException {
+        final ByteBuffer buffer = this.buffer;
+        long total = 0L;
+        do {
+            final int cnt = buffer.remaining();
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), cnt);
+            buffer.position(buffer.limit());
+            total += cnt;
+        } while (fill() != -1);
+        return total;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long skip(final long n) throws IOException {
+        if (n <= 0L) {
+            return 0L;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (!buffer.hasRemaining() && fill() == -1) {
+            return 0L;
+        }
+        final int cnt = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + cnt);
+        return cnt;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int available() {
+        return buffer.remaining();
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int fill() throws IOException {
+        final ByteBuffer buffer = this.buffer;
+        buffer.clear();
+        try {
+            return readSome(buffer);
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Read at least one byte into the given buffer unless the channel is at EOF. A non-blocking channel is busy-polled, so the
+     * channel should normally be in blocking mode.
+     */
+    private int readSome(final ByteBuffer target) throws IOException {
+        int cnt;
+        while ((cnt = channel.read(target)) == 0) {
+            Thread.onSpinWait();
+        }
+        return cnt;
+    }
+}
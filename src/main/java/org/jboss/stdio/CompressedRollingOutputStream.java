@@ -0,0 +1,397 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream which writes gzip-compressed, rolling files. Writers only copy into one of a small, fixed set of
+ * buffers; a background thread compresses full buffers with a reused {@link Deflater} and writes the result. If the
+ * compressor falls behind, writers wait for a free buffer, so memory use stays bounded.
+ * <p>
+ * Files are named {@code <prefix>.<sequence>.log.gz} and are rolled when their compressed size reaches the size limit
+ * or when they have been open for the roll interval, whichever comes first. Only the newest files up to the retention
+ * limit are kept, including files left in the directory by an earlier instance; the sequence continues after the
+ * highest of them. Data which has not filled a buffer is compressed and written, with a sync flush, when the stream is
+ * flushed and after at most one second of inactivity; {@link #flush()} hands the data to the compressor but does not
+ * wait for it to be written. Streams which are still open at shutdown are closed, so that the last file gets its gzip
+ * trailer.
+ */
+public final class CompressedRollingOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 65536;
+    private static final int CHUNK_COUNT = 4;
+    private static final long IDLE_FLUSH_MILLIS = 1000L;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final Chunk END = new Chunk(0);
+    private static final Set<CompressedRollingOutputStream> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                for (CompressedRollingOutputStream stream : OPEN) {
+                    try {
+                        stream.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }, "stdio-compressor-shutdown"));
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileSize;
+    private final long rollIntervalNanos;
+    private final int maxFiles;
+
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNK_COUNT);
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNK_COUNT + 1);
+    private final AtomicLong lostBytes = new AtomicLong();
+    private final Thread compressor;
+    private volatile IOException lastFailure;
+
+    // guarded by this
+    private Chunk current;
+    private boolean closed;
+
+    // used by the compressor thread only
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] compressed = new byte[CHUNK_SIZE];
+    private final Deque<Path> retained = new ArrayDeque<Path>();
+    private long sequence;
+    private OutputStream file;
+    private long fileSize;
+    private long fileOpened;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param directory    the directory to create the files in
+     * @param prefix       the file name prefix
+     * @param maxFileSize  the compressed size at which a file is rolled, in bytes
+     * @param rollInterval the time after which a file is rolled, or zero to roll by size only
+     * @param unit         the unit of the roll interval
+     * @param maxFiles     the maximum number of files to retain, including the current one
+     * @param level        the compression level, see {@link Deflater}
+     * @throws IOException if the directory cannot be created
+     */
+    public CompressedRollingOutputStream(final Path directory, final String prefix, final long maxFileSize,
+            final long rollInterval, final TimeUnit unit, final int maxFiles, final int level) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("directory is null");
+        }
+        if (prefix == null) {
+            throw new NullPointerException("prefix is null");
+        }
+        if (maxFileSize <= 0L) {
+            throw new IllegalArgumentException("maxFileSize must be positive");
+        }
+        if (maxFiles <= 0) {
+            throw new IllegalArgumentException("maxFiles must be positive");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+        rollIntervalNanos = unit.toNanos(rollInterval);
+        this.maxFiles = maxFiles;
+        deflater = new Deflater(level, true);
+        Files.createDirectories(directory);
+        sequence = SequencedFiles.scan(directory, prefix, ".log.gz", retained);
+        current = new Chunk(CHUNK_SIZE);
+        for (int i = 1; i < CHUNK_COUNT; i++) {
+            free.add(new Chunk(CHUNK_SIZE));
+        }
+        compressor = new Thread(new Runnable() {
+            public void run() {
+                compress();
+            }
+        }, "stdio-compressor");
+        compressor.setDaemon(true);
+        compressor.start();
+        OPEN.add(this);
+    }
+
+    /**
+     * Get the number of bytes which were lost because writing a file failed.
+     *
+     * @return the number of lost bytes
+     */
+    public long getLostBytes() {
+        return lostBytes.get();
+    }
+
+    /**
+     * Get the most recent failure to write a file, if any.
+     *
+     * @return the most recent failure, or {@code null} if writing never failed
+     */
+    public IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            Chunk chunk = current;
+            if (chunk.count == chunk.data.length) {
+                chunk = handOff();
+            }
+            chunk.data[chunk.count++] = (byte) b;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, int off, int len) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            Chunk chunk = current;
+            while (len > 0) {
+                if (chunk.count == chunk.data.length) {
+                    chunk = handOff();
+                }
+                final int cnt = Math.min(len, chunk.data.length - chunk.count);
+                System.arraycopy(b, off, chunk.data, chunk.count, cnt);
+                chunk.count += cnt;
+                off += cnt;
+                len -= cnt;
+            }
+        }
+    }
+
+    /**
+     * Queue the current chunk for compression and take a free one. Must be called with the lock held.
+     */
+    private Chunk handOff() throws IOException {
+        final Chunk next;
+        try {
+            next = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compressor");
+        }
+        full.add(current);
+        return current = next;
+    }
+
+    /**
+     * Hand the buffered data to the compressor, to be compressed and written with a sync flush, so that the file can
+     * be decompressed up to this point. This waits for a free buffer if the compressor is behind, but not for the data
+     * to be written.
+     *
+     * @throws IOException if this stream is closed or the calling thread is interrupted while waiting
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (current.count > 0) {
+                current.sync = true;
+                handOff();
+            }
+        }
+    }
+
+    /**
+     * Close this stream, waiting for all buffered data to be compressed and the current file to be finished.
+     *
+     * @throws IOException if the last file could not be written
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            OPEN.remove(this);
+            if (current.count > 0) {
+                full.add(current);
+            }
+            full.add(END);
+        }
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                compressor.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        deflater.end();
+        final IOException failure = lastFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void compress() {
+        for (;;) {
+            Chunk chunk;
+            boolean idle = false;
+            try {
+                chunk = full.poll(IDLE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (chunk == null) {
+                chunk = takePartial();
+                idle = true;
+            }
+            if (chunk == END) {
+                finishFile();
+                return;
+            }
+            if (chunk != null) {
+                try {
+                    if (file == null) {
+                        openFile();
+                    }
+                    deflate(chunk.data, chunk.count, idle || chunk.sync ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                } catch (IOException e) {
+                    lastFailure = e;
+                    lostBytes.addAndGet(chunk.count);
+                    closeFile();
+                }
+                chunk.count = 0;
+                chunk.sync = false;
+                free.add(chunk);
+            }
+            if (file != null && (fileSize >= maxFileSize
+                    || rollIntervalNanos > 0L && System.nanoTime() - fileOpened >= rollIntervalNanos)) {
+                finishFile();
+            }
+        }
+    }
+
+    private Chunk takePartial() {
+        synchronized (this) {
+            if (current.count == 0 || closed) {
+                return null;
+            }
+            final Chunk spare = free.poll();
+            if (spare == null) {
+                return null;
+            }
+            final Chunk chunk = current;
+            current = spare;
+            return chunk;
+        }
+    }
+
+    private void deflate(final byte[] data, final int len, final int flushMode) throws IOException {
+        final Deflater deflater = this.deflater;
+        crc.update(data, 0, len);
+        deflater.setInput(data, 0, len);
+        int cnt;
+        while (!deflater.needsInput()) {
+            cnt = deflater.deflate(compressed, 0, compressed.length, Deflater.NO_FLUSH);
+            writeFile(compressed, cnt);
+        }
+        if (flushMode == Deflater.SYNC_FLUSH) {
+            do {
+                cnt = deflater.deflate(compressed, 0, compressed.length, Deflater.SYNC_FLUSH);
+                writeFile(compressed, cnt);
+            } while (cnt == compressed.length);
+            file.flush();
+        }
+    }
+
+    private void writeFile(final byte[] b, final int len) throws IOException {
+        if (len > 0) {
+            file.write(b, 0, len);
+            fileSize += len;
+        }
+    }
+
+    private void openFile() throws IOException {
+        final Path path = directory.resolve(String.format("%s.%08d.log.gz", prefix, Long.valueOf(++sequence)));
+        file = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        fileSize = 0L;
+        fileOpened = System.nanoTime();
+        deflater.reset();
+        crc.reset();
+        retained.addLast(path);
+        while (retained.size() > maxFiles) {
+            Files.deleteIfExists(retained.removeFirst());
+        }
+        writeFile(GZIP_HEADER, GZIP_HEADER.length);
+    }
+
+    private void finishFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            final Deflater deflater = this.deflater;
+            deflater.finish();
+            while (!deflater.finished()) {
+                writeFile(compressed, deflater.deflate(compressed));
+            }
+            final byte[] trailer = new byte[8];
+            putIntLE(trailer, 0, (int) crc.getValue());
+            putIntLE(trailer, 4, (int) deflater.getBytesRead());
+            writeFile(trailer, trailer.length);
+        } catch (IOException e) {
+            lastFailure = e;
+        }
+        closeFile();
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            lastFailure = e;
+        }
+        file = null;
+    }
+
+    private static void putIntLE(final byte[] b, final int off, final int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
+    private static final class Chunk {
+        private final byte[] data;
+        private int count;
+        private boolean sync;
+
+        Chunk(final int size) {
+            data = new byte[size];
+        }
+    }
+}
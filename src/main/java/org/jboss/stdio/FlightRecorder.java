@@ -0,0 +1,176 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A fixed-size, off-heap record of the most recent console output. Output is teed into a direct ring buffer which
+ * overwrites its oldest data, so the recorder can be left on permanently and dumped when something goes wrong.
+ * Recording does not allocate.
+ * <p>
+ * Typical use is to wrap both output streams of a context so that they share one recording:
+ *
+ * <pre>
+ * final FlightRecorder recorder = new FlightRecorder(4 * 1024 * 1024);
+ * final StdioContext context = StdioContext.create(in, recorder.tee(out), recorder.tee(err));
+ * </pre>
+ *
+ * @see StdioService#addFlightRecorder(FlightRecorder, Path)
+ */
+public final class FlightRecorder {
+
+    // guarded by this
+    private final ByteBuffer ring;
+    private long written;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param capacity the number of most recent bytes to keep
+     */
+    public FlightRecorder(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Get the number of most recent bytes this recorder keeps.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * Get the total number of bytes recorded so far, including those which have since been overwritten.
+     *
+     * @return the number of recorded bytes
+     */
+    public synchronized long getRecordedBytes() {
+        return written;
+    }
+
+    /**
+     * Create an output stream which writes to the given stream and records everything written.
+     *
+     * @param delegate the stream to write through to
+     * @return the recording stream
+     */
+    public OutputStream tee(final OutputStream delegate) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate is null");
+        }
+        return new RecordingOutputStream(delegate);
+    }
+
+    /**
+     * Record the given bytes.
+     *
+     * @param b   the bytes
+     * @param off the offset into {@code b}
+     * @param len the number of bytes
+     */
+    public synchronized void record(final byte[] b, int off, int len) {
+        final ByteBuffer ring = this.ring;
+        final int capacity = ring.capacity();
+        if (len > capacity) {
+            written += len - capacity;
+            off += len - capacity;
+            len = capacity;
+        }
+        while (len > 0) {
+            final int pos = (int) (written % capacity);
+            final int cnt = Math.min(len, capacity - pos);
+            ring.limit(pos + cnt).position(pos);
+            ring.put(b, off, cnt);
+            written += cnt;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Record a single byte.
+     *
+     * @param b the byte
+     */
+    public synchronized void record(final int b) {
+        final ByteBuffer ring = this.ring;
+        ring.clear();
+        ring.put((int) (written % ring.capacity()), (byte) b);
+        written++;
+    }
+
+    /**
+     * Write the recorded bytes, oldest first, to the given stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void dump(final OutputStream out) throws IOException {
+        final byte[] copy;
+        synchronized (this) {
+            final ByteBuffer ring = this.ring;
+            final int capacity = ring.capacity();
+            final int size = (int) Math.min(written, capacity);
+            final int start = (int) ((written - size) % capacity);
+            copy = new byte[size];
+            final int first = Math.min(size, capacity - start);
+            ring.limit(start + first).position(start);
+            ring.get(copy, 0, first);
+            ring.limit(size - first).position(0);
+            ring.get(copy, first, size - first);
+        }
+        out.write(copy);
+        out.flush();
+    }
+
+    /**
+     * Write the recorded bytes, oldest first, to the given file, replacing its contents.
+     *
+     * @param file the file to write to
+     * @throws IOException if writing fails
+     */
+    public void dump(final Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            dump(out);
+        }
+    }
+
+    private final class RecordingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+
+        RecordingOutputStream(final OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        public void write(final int b) throws IOException {
+            record(b);
+            delegate.write(b);
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            record(b, off, len);
+            delegate.write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An output stream which writes each completed line as a JSON object to a channel, for example:
+ *
+ * <pre>
+ * {"timestamp":"2024-05-01T12:00:00.000Z","category":"stdout","level":"INFO","stream":"out","message":"Hello"}
+ * </pre>
+ *
+ * The JSON is always UTF-8 encoded. The bytes written to this stream are decoded with the charset given at
+ * construction, which must be the charset of the {@code PrintStream} writing to it and must encode line feeds and
+ * carriage returns as single ASCII bytes; UTF-8 is assumed if none is given. UTF-8 input is escaped while it is
+ * copied into a reusable output buffer, without decoding; input in any other charset is decoded into a reusable
+ * character buffer and characters outside of ASCII are written as Unicode escapes. Either way, encoding a line
+ * does not allocate once the buffers have grown to the longest line. Encoded lines are written to the channel when more
+ * than 8 KiB have accumulated and when this stream is flushed or closed. A trailing carriage return is removed from
+ * each line; a partial line is held until its line terminator arrives or the stream is closed.
+ */
+public final class JsonLinesOutputStream extends OutputStream {
+
+    private static final int WRITE_THRESHOLD = 8192;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP_PREFIX = "{\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUFFIX = "\"}\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final byte[] fields;
+    // null for UTF-8, which is copied without decoding
+    private final CharsetDecoder decoder;
+
+    // guarded by this
+    private byte[] line = new byte[256];
+    private int lineCount;
+    private byte[] out = new byte[WRITE_THRESHOLD * 2];
+    private int outCount;
+    private ByteBuffer outBuffer = ByteBuffer.wrap(out);
+    private CharBuffer chars;
+
+    /**
+     * Construct a new instance for UTF-8 encoded output.
+     *
+     * @param channel  the channel to write to
+     * @param category the value of the {@code category} field
+     * @param level    the value of the {@code level} field
+     * @param stream   the value of the {@code stream} field, for example {@code out} or {@code err}
+     */
+    public JsonLinesOutputStream(final WritableByteChannel channel, final String category, final String level,
+            final String stream) {
+        this(channel, category, level, stream, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param channel  the channel to write to
+     * @param category the value of the {@code category} field
+     * @param level    the value of the {@code level} field
+     * @param stream   the value of the {@code stream} field, for example {@code out} or {@code err}
+     * @param charset  the charset of the output written to this stream
+     * @throws IllegalArgumentException if the charset does not encode line terminators as single ASCII bytes
+     */
+    public JsonLinesOutputStream(final WritableByteChannel channel, final String category, final String level,
+            final String stream, final Charset charset) throws IllegalArgumentException {
+        if (channel == null) {
+            throw new NullPointerException("channel is null");
+        }
+        if (charset == null) {
+            throw new NullPointerException("charset is null");
+        }
+        if (!"\r\n".equals(new String("\r\n".getBytes(StandardCharsets.US_ASCII), charset))) {
+            throw new IllegalArgumentException("Charset " + charset + " does not encode line terminators as ASCII");
+        }
+        this.channel = channel;
+        decoder = charset.equals(StandardCharsets.UTF_8) ? null
+                : charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final StringBuilder b = new StringBuilder();
+        b.append("\",\"category\":\"");
+        escape(b, category);
+        b.append("\",\"level\":\"");
+        escape(b, level);
+        b.append("\",\"stream\":\"");
+        escape(b, stream);
+        b.append("\",\"message\":\"");
+        fields = b.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void write(final int b) throws IOException {
+        if (b == '\n') {
+            encodeLine();
+        } else {
+            if (lineCount == line.length) {
+                line = Arrays.copyOf(line, lineCount << 1);
+            }
+            line[lineCount++] = (byte) b;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        int mark = off;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                appendLine(b, mark, i - mark);
+                encodeLine();
+                mark = i + 1;
+            }
+        }
+        appendLine(b, mark, end - mark);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void flush() throws IOException {
+        writeOut();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void close() throws IOException {
+        try {
+            if (lineCount > 0) {
+                encodeLine();
+            }
+            writeOut();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void appendLine(final byte[] b, final int off, final int len) {
+        if (lineCount + len > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length << 1, lineCount + len));
+        }
+        System.arraycopy(b, off, line, lineCount, len);
+        lineCount += len;
+    }
+
+    private void encodeLine() throws IOException {
+        int len = lineCount;
+        lineCount = 0;
+        if (len > 0 && line[len - 1] == '\r') {
+            len--;
+        }
+        final CharBuffer chars = decoder == null ? null : decodeLine(len);
+        // worst case: every byte or character becomes a six byte escape
+        final int max = chars == null ? len : chars.remaining();
+        ensureOut(TIMESTAMP_PREFIX.length + 24 + fields.length + max * 6 + SUFFIX.length);
+        final byte[] out = this.out;
+        int pos = outCount;
+        System.arraycopy(TIMESTAMP_PREFIX, 0, out, pos, TIMESTAMP_PREFIX.length);
+        pos = putTimestamp(out, pos + TIMESTAMP_PREFIX.length, System.currentTimeMillis());
+        System.arraycopy(fields, 0, out, pos, fields.length);
+        pos += fields.length;
+        if (chars == null) {
+            final byte[] line = this.line;
+            for (int i = 0; i < len; i++) {
+                final byte c = line[i];
+                if (c >= 0 && c < 0x20 || c == '"' || c == '\\') {
+                    pos = putEscape(out, pos, c);
+                } else {
+                    // printable ASCII and UTF-8 multi-byte sequences are copied as is
+                    out[pos++] = c;
+                }
+            }
+        } else {
+            while (chars.hasRemaining()) {
+                final char c = chars.get();
+                if (c < 0x20 || c == '"' || c == '\\' || c >= 0x80) {
+                    pos = putEscape(out, pos, c);
+                } else {
+                    out[pos++] = (byte) c;
+                }
+            }
+        }
+        System.arraycopy(SUFFIX, 0, out, pos, SUFFIX.length);
+        outCount = pos + SUFFIX.length;
+        if (outCount > WRITE_THRESHOLD) {
+            writeOut();
+        }
+    }
+
+    private CharBuffer decodeLine(final int len) {
+        final CharsetDecoder decoder = this.decoder;
+        final int capacity = (int) Math.ceil(len * (double) decoder.maxCharsPerByte());
+        CharBuffer chars = this.chars;
+        if (chars == null || chars.capacity() < capacity) {
+            chars = this.chars = CharBuffer.allocate(Math.max(capacity, 256));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(line, 0, len), chars, true);
+        decoder.flush(chars);
+        return chars.flip();
+    }
+
+    /**
+     * Write the JSON escape of a quote, backslash, control or non-ASCII character.
+     *
+     * @return the position after the escape
+     */
+    private static int putEscape(final byte[] b, int pos, final int c) {
+        b[pos++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                b[pos++] = (byte) c;
+                break;
+            case '\n':
+                b[pos++] = 'n';
+                break;
+            case '\r':
+                b[pos++] = 'r';
+                break;
+            case '\t':
+                b[pos++] = 't';
+                break;
+            case '\b':
+                b[pos++] = 'b';
+                break;
+            case '\f':
+                b[pos++] = 'f';
+                break;
+            default:
+                b[pos++] = 'u';
+                b[pos++] = HEX[c >> 12 & 0xf];
+                b[pos++] = HEX[c >> 8 & 0xf];
+                b[pos++] = HEX[c >> 4 & 0xf];
+                b[pos++] = HEX[c & 0xf];
+        }
+        return pos;
+    }
+
+    private void ensureOut(final int len) {
+        if (outCount + len > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length << 1, outCount + len));
+            outBuffer = ByteBuffer.wrap(out);
+        }
+    }
+
+    private void writeOut() throws IOException {
+        if (outCount == 0) {
+            return;
+        }
+        final ByteBuffer outBuffer = this.outBuffer;
+        outBuffer.clear().limit(outCount);
+        try {
+            while (outBuffer.hasRemaining()) {
+                channel.write(outBuffer);
+            }
+        } finally {
+            outCount = 0;
+        }
+    }
+
+    /**
+     * Write the time as an ISO-8601 UTC timestamp with millisecond precision, such as
+     * {@code 2024-05-01T12:00:00.000Z}.
+     *
+     * @return the position after the timestamp
+     */
+    private static int putTimestamp(final byte[] b, int pos, final long millis) {
+        final long days = Math.floorDiv(millis, 86_400_000L);
+        final long millisOfDay = Math.floorMod(millis, 86_400_000L);
+        // civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = days + 719_468L;
+        final long era = Math.floorDiv(z, 146_097L);
+        final long doe = z - era * 146_097L;
+        final long yoe = (doe - doe / 1460L + doe / 36_524L - doe / 146_096L) / 365L;
+        final long doy = doe - (365L * yoe + yoe / 4L - yoe / 100L);
+        final long mp = (5L * doy + 2L) / 153L;
+        final int day = (int) (doy - (153L * mp + 2L) / 5L + 1L);
+        final int month = (int) (mp < 10L ? mp + 3L : mp - 9L);
+        final int year = (int) (yoe + era * 400L + (month <= 2 ? 1L : 0L));
+        pos = putDigits(b, pos, year, 4);
+        b[pos++] = '-';
+        pos = putDigits(b, pos, month, 2);
+        b[pos++] = '-';
+        pos = putDigits(b, pos, day, 2);
+        b[pos++] = 'T';
+        pos = putDigits(b, pos, (int) (millisOfDay / 3_600_000L), 2);
+        b[pos++] = ':';
+        pos = putDigits(b, pos, (int) (millisOfDay / 60_000L % 60L), 2);
+        b[pos++] = ':';
+        pos = putDigits(b, pos, (int) (millisOfDay / 1000L % 60L), 2);
+        b[pos++] = '.';
+        pos = putDigits(b, pos, (int) (millisOfDay % 1000L), 3);
+        b[pos++] = 'Z';
+        return pos;
+    }
+
+    private static int putDigits(final byte[] b, final int pos, int value, final int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            b[pos + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+
+    private static void escape(final StringBuilder b, final String s) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c < 0x20) {
+                b.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                b.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A buffering output stream which writes its buffer to the underlying stream when the buffer is full, when explicitly
+ * flushed, at shutdown, and at the latest a fixed time after the first byte was buffered. The timed flushes of all
+ * instances are run by a single shared daemon thread.
+ */
+final class LatencyBoundedOutputStream extends OutputStream {
+
+    private static final ScheduledThreadPoolExecutor FLUSHER;
+    private static final Set<LatencyBoundedOutputStream> DIRTY = ConcurrentHashMap.newKeySet();
+
+    static {
+        FLUSHER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "stdio-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        FLUSHER.setRemoveOnCancelPolicy(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                for (LatencyBoundedOutputStream stream : DIRTY) {
+                    try {
+                        stream.flush();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }, "stdio-flusher-shutdown"));
+    }
+
+    private final OutputStream out;
+    private final long maxLatencyNanos;
+    private final Runnable timedFlush = new Runnable() {
+        public void run() {
+            try {
+                flush();
+            } catch (IOException ignored) {
+                // the next write or flush will report the problem to the caller
+            }
+        }
+    };
+    // guarded by this
+    private final byte[] buffer;
+    private int count;
+    private boolean scheduled;
+
+    LatencyBoundedOutputStream(final OutputStream out, final int bufferSize, final long maxLatency, final TimeUnit unit) {
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.out = out;
+        buffer = new byte[bufferSize];
+        maxLatencyNanos = unit.toNanos(maxLatency);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void write(final int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+        schedule();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        if (len >= buffer.length) {
+            // no point in copying a write which would fill the buffer anyway
+            flushBuffer();
+            out.write(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+        schedule();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled && count > 0) {
+            scheduled = true;
+            DIRTY.add(this);
+            FLUSHER.schedule(timedFlush, maxLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (scheduled) {
+            // an already queued timed flush finds an empty buffer and just flushes the stream
+            scheduled = false;
+            DIRTY.remove(this);
+        }
+        if (count > 0) {
+            final int cnt = count;
+            count = 0;
+            out.write(buffer, 0, cnt);
+        }
+    }
+}
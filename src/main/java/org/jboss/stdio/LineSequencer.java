@@ -0,0 +1,187 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A source of sequence numbers shared by several output streams, typically the output and error streams of one
+ * context. Each stream created by {@link #stamp(OutputStream)} prefixes every completed line with a header taken from
+ * this sequencer, so that the relative order of the lines of all its streams can be restored even when the streams
+ * are delivered to separate or asynchronous sinks:
+ *
+ * <pre>
+ * final LineSequencer sequencer = new LineSequencer(true);
+ * final StdioContext context = StdioContext.create(in, sequencer.stamp(outSink), sequencer.stamp(errSink));
+ * </pre>
+ *
+ * The header is {@code #<sequence> } or, with timestamps, {@code #<sequence> <epochMillis> }. Sequence numbers start at
+ * one and are assigned when a line is completed. A partial line is held until its line terminator arrives, the stream
+ * is flushed or closed, or it reaches 64 KiB; in the last three cases it is written as a fragment with its own header
+ * and without a line terminator, so that a prompt such as {@code print("Password: ")} followed by {@code flush()}
+ * appears at once. The rest of the line follows under the next sequence number.
+ */
+public final class LineSequencer {
+
+    // room for '#', two longs, two spaces
+    private static final int HEADER_SIZE = 42;
+    private static final int INITIAL_LINE_SIZE = 256;
+    private static final int MAX_LINE_SIZE = 1 << 16;
+    private static final int MAX_RETAINED_SIZE = 1 << 13;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final boolean timestamps;
+
+    /**
+     * Construct a new instance which stamps sequence numbers only.
+     */
+    public LineSequencer() {
+        this(false);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param timestamps {@code true} to also stamp each line with the current time in milliseconds
+     */
+    public LineSequencer(final boolean timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Get the sequence number of the most recently completed line.
+     *
+     * @return the last sequence number, or zero if no line has been completed
+     */
+    public long getLastSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Create an output stream which writes each completed line to the given sink, prefixed with its header.
+     *
+     * @param sink the sink to write the stamped lines to
+     * @return the stamping stream
+     */
+    public OutputStream stamp(final OutputStream sink) {
+        if (sink == null) {
+            throw new NullPointerException("sink is null");
+        }
+        return new SequencedOutputStream(sink);
+    }
+
+    /**
+     * Write {@code value} in decimal so that it ends just before {@code end}.
+     *
+     * @return the index of the first digit
+     */
+    private static int putLong(final byte[] b, int end, long value) {
+        do {
+            b[--end] = (byte) ('0' + (int) (value % 10L));
+            value /= 10L;
+        } while (value != 0L);
+        return end;
+    }
+
+    private final class SequencedOutputStream extends OutputStream {
+        private final OutputStream sink;
+        // guarded by this; the line starts at HEADER_SIZE, leaving room for the header in front of it
+        private byte[] buffer = new byte[HEADER_SIZE + INITIAL_LINE_SIZE];
+        private int count = HEADER_SIZE;
+
+        SequencedOutputStream(final OutputStream sink) {
+            this.sink = sink;
+        }
+
+        public synchronized void write(final int b) throws IOException {
+            append((byte) b);
+            if (b == '\n' || count - HEADER_SIZE == MAX_LINE_SIZE) {
+                emit();
+            }
+        }
+
+        public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+            int mark = off;
+            final int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    append(b, mark, i + 1 - mark);
+                    if (count > HEADER_SIZE) {
+                        // not already written by reaching the size limit with the terminator
+                        emit();
+                    }
+                    mark = i + 1;
+                }
+            }
+            append(b, mark, end - mark);
+        }
+
+        public synchronized void flush() throws IOException {
+            if (count > HEADER_SIZE) {
+                emit();
+            }
+            sink.flush();
+        }
+
+        public synchronized void close() throws IOException {
+            try {
+                if (count > HEADER_SIZE) {
+                    emit();
+                }
+            } finally {
+                sink.close();
+            }
+        }
+
+        private void append(final byte b) {
+            ensureCapacity(1);
+            buffer[count++] = b;
+        }
+
+        private void append(final byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                final int cnt = Math.min(len, MAX_LINE_SIZE - (count - HEADER_SIZE));
+                ensureCapacity(cnt);
+                System.arraycopy(b, off, buffer, count, cnt);
+                count += cnt;
+                off += cnt;
+                len -= cnt;
+                if (count - HEADER_SIZE == MAX_LINE_SIZE) {
+                    emit();
+                }
+            }
+        }
+
+        private void ensureCapacity(final int len) {
+            if (count + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(HEADER_SIZE + MAX_LINE_SIZE,
+                        Math.max(buffer.length << 1, count + len)));
+            }
+        }
+
+        private void emit() throws IOException {
+            final byte[] buffer = this.buffer;
+            int start = HEADER_SIZE;
+            buffer[--start] = ' ';
+            if (timestamps) {
+                start = putLong(buffer, start, System.currentTimeMillis());
+                buffer[--start] = ' ';
+            }
+            start = putLong(buffer, start, sequence.incrementAndGet());
+            buffer[--start] = '#';
+            final int end = count;
+            count = HEADER_SIZE;
+            if (buffer.length > HEADER_SIZE + MAX_RETAINED_SIZE) {
+                // do not hold on to the memory of one long line
+                this.buffer = new byte[HEADER_SIZE + INITIAL_LINE_SIZE];
+            }
+            sink.write(buffer, start, end - start);
+        }
+    }
+}
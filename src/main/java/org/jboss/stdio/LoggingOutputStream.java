@@ -5,6 +5,11 @@
 
 package org.jboss.stdio;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,6 +17,13 @@ import java.util.logging.Logger;
  * A convenience {@code OutputStream} which writes to a {@code LoggingWriter}.
  */
 public final class LoggingOutputStream extends WriterOutputStream {
+
+    private static final ConcurrentHashMap<Key, SharedReference> shared = new ConcurrentHashMap<Key, SharedReference>();
+    private static final ReferenceQueue<LoggingOutputStream> queue = new ReferenceQueue<LoggingOutputStream>();
+
+    // set before a shared instance is published through the registry
+    private boolean sharedInstance;
+
     /**
      * Construct a new instance.
      *
@@ -41,4 +53,129 @@ public final class LoggingOutputStream extends WriterOutputStream {
     public LoggingOutputStream(final Logger log, final Level level) {
         super(new LoggingWriter(log, level));
     }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param log       the logger to use
+     * @param level     the level at which to log messages
+     * @param stripAnsi {@code true} to remove ANSI escape sequences from the output before it is logged
+     * @see AnsiStrippingWriter
+     */
+    public LoggingOutputStream(final Logger log, final Level level, final boolean stripAnsi) {
+        super(stripAnsi ? new AnsiStrippingWriter(new LoggingWriter(log, level)) : new LoggingWriter(log, level));
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param log     the logger to use
+     * @param level   the level at which to log messages
+     * @param charset the charset used to decode the written bytes
+     */
+    public LoggingOutputStream(final Logger log, final Level level, final Charset charset) {
+        super(new LoggingWriter(log, level), charset);
+    }
+
+    /**
+     * Get a shared instance for the given category, level and charset. Callers asking for the same combination get the
+     * same instance for as long as it is strongly reachable, so they share one logger lookup, decoder and buffer, and
+     * partial lines written by one caller are completed by the next. Unused instances are evicted after they have been
+     * garbage collected.
+     *
+     * @param category the log category to use
+     * @param level    the level at which to log messages
+     * @param charset  the charset used to decode the written bytes
+     * @return the shared instance
+     */
+    public static LoggingOutputStream getShared(final String category, final Level level, final Charset charset) {
+        if (category == null) {
+            throw new NullPointerException("category is null");
+        }
+        if (level == null) {
+            throw new NullPointerException("level is null");
+        }
+        if (charset == null) {
+            throw new NullPointerException("charset is null");
+        }
+        expunge();
+        final Key key = new Key(category, level, charset);
+        SharedReference ref = shared.get(key);
+        LoggingOutputStream stream = ref == null ? null : ref.get();
+        if (stream != null) {
+            return stream;
+        }
+        final LoggingOutputStream created = new LoggingOutputStream(Logger.getLogger(category), level, charset);
+        created.sharedInstance = true;
+        final SharedReference createdRef = new SharedReference(created, key);
+        for (;;) {
+            ref = shared.putIfAbsent(key, createdRef);
+            if (ref == null) {
+                return created;
+            }
+            stream = ref.get();
+            if (stream != null) {
+                return stream;
+            }
+            // the existing entry was collected but not yet expunged
+            if (shared.replace(key, ref, createdRef)) {
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Determine whether this instance was obtained from {@link #getShared(String, Level, Charset)}, in which case its
+     * buffered partial line may belong to any of the contexts sharing it.
+     *
+     * @return {@code true} if this instance is shared
+     */
+    boolean isShared() {
+        return sharedInstance;
+    }
+
+    private static void expunge() {
+        SharedReference ref;
+        while ((ref = (SharedReference) queue.poll()) != null) {
+            shared.remove(ref.key, ref);
+        }
+    }
+
+    private static final class SharedReference extends WeakReference<LoggingOutputStream> {
+        private final Key key;
+
+        SharedReference(final LoggingOutputStream referent, final Key key) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final String category;
+        private final Level level;
+        private final Charset charset;
+        private final int hashCode;
+
+        Key(final String category, final Level level, final Charset charset) {
+            this.category = category;
+            this.level = level;
+            this.charset = charset;
+            hashCode = Objects.hash(category, level, charset);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return category.equals(other.category) && level.equals(other.level) && charset.equals(other.charset);
+        }
+    }
 }
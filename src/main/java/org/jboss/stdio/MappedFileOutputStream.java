@@ -0,0 +1,226 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An output stream which appends raw bytes to preallocated, memory-mapped segment files. Writers reserve their write
+ * position with a single atomic add and copy directly into the mapping, so concurrent writers do not serialize. When a
+ * segment is full, a new one is started and the oldest segments beyond the retention limit are deleted.
+ * <p>
+ * Segment files are named {@code <prefix>.<sequence>.log} and are truncated to their used length once all writers have
+ * left them. Segments left in the directory by an earlier instance are kept and count against the retention limit; the
+ * sequence continues after the highest of them. Flushing this stream does nothing since the data is already visible to
+ * other readers of the file; call {@link #force()} to write it to the storage device.
+ */
+public final class MappedFileOutputStream extends OutputStream {
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // guarded by this
+    private final Deque<Path> retained = new ArrayDeque<Path>();
+    private long sequence;
+    private boolean closed;
+
+    private volatile Segment current;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param directory   the directory to create the segment files in
+     * @param prefix      the file name prefix of the segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxSegments the maximum number of segment files to retain, including the current one
+     * @throws IOException if the first segment cannot be created
+     */
+    public MappedFileOutputStream(final Path directory, final String prefix, final int segmentSize, final int maxSegments)
+            throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("directory is null");
+        }
+        if (prefix == null) {
+            throw new NullPointerException("prefix is null");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("maxSegments must be positive");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        synchronized (this) {
+            sequence = SequencedFiles.scan(directory, prefix, ".log", retained);
+            current = newSegment();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int cnt = Math.min(len, segmentSize);
+            writeChunk(b, off, cnt);
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    private void writeChunk(final byte[] b, final int off, final int len) throws IOException {
+        for (;;) {
+            final Segment segment = current;
+            if (segment == null) {
+                throw new IOException("Stream is closed");
+            }
+            segment.active.incrementAndGet();
+            try {
+                if (!segment.retired) {
+                    final long start = segment.next.getAndAdd(len);
+                    if (start + len <= segmentSize) {
+                        final ByteBuffer target = segment.buffer.duplicate();
+                        target.position((int) start);
+                        target.put(b, off, len);
+                        return;
+                    }
+                    if (start < segmentSize) {
+                        // this is the one reservation which crosses the end; everything before it was written
+                        segment.used = start;
+                    }
+                }
+            } finally {
+                release(segment);
+            }
+            roll(segment);
+        }
+    }
+
+    private void release(final Segment segment) throws IOException {
+        if (segment.active.decrementAndGet() == 0 && segment.retired) {
+            segment.finish();
+        }
+    }
+
+    private synchronized void roll(final Segment segment) throws IOException {
+        if (current != segment || closed) {
+            // another writer already rolled
+            return;
+        }
+        segment.retired = true;
+        current = newSegment();
+        if (segment.active.get() == 0) {
+            segment.finish();
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        final Path path = directory.resolve(String.format("%s.%08d.log", prefix, Long.valueOf(++sequence)));
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, segmentSize);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        retained.addLast(path);
+        while (retained.size() > maxSegments) {
+            Files.deleteIfExists(retained.removeFirst());
+        }
+        return new Segment(channel, buffer);
+    }
+
+    /**
+     * Ignored; the written data is already visible to readers of the segment file.
+     */
+    public void flush() {
+        // nothing
+    }
+
+    /**
+     * Force the written data of the current segment to the storage device.
+     */
+    public void force() {
+        final Segment segment = current;
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Close this stream, truncating the current segment to its used length once all writers have left it.
+     *
+     * @throws IOException if the segment file cannot be truncated or closed
+     */
+    public void close() throws IOException {
+        final Segment segment;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segment = current;
+            current = null;
+            segment.retired = true;
+        }
+        if (segment.active.get() == 0) {
+            segment.finish();
+        }
+    }
+
+    private final class Segment {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean retired;
+        private volatile long used = -1L;
+
+        Segment(final FileChannel channel, final MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void finish() throws IOException {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            final long used = this.used;
+            try {
+                channel.truncate(used == -1L ? Math.min(next.get(), segmentSize) : used);
+            } catch (IOException ignored) {
+                // some platforms do not allow truncating a mapped file; the tail stays zero-filled
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+
+/**
+ * Access to the file descriptor calls needed by {@link NativeOutputCapture}. This is the variant for Java versions
+ * without the foreign function API, where none of them are available; the multi-release jar contains the
+ * implementation for Java 22 and later.
+ */
+final class NativeFileDescriptors {
+
+    private NativeFileDescriptors() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static int[] pipe() throws IOException {
+        throw unsupported();
+    }
+
+    static int dup(final int fd) throws IOException {
+        throw unsupported();
+    }
+
+    static void dup2(final int fd, final int target) throws IOException {
+        throw unsupported();
+    }
+
+    static void close(final int fd) throws IOException {
+        throw unsupported();
+    }
+
+    static void write(final int fd, final byte[] b, final int off, final int len) throws IOException {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Native file descriptor access requires Java 22 or later");
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Captures what native code and the JVM itself write directly to file descriptors 1 and 2, which bypasses
+ * {@link System#setOut(PrintStream)} and therefore {@link StdioContext#install()}. Each descriptor is replaced with the
+ * write end of a pipe using {@code dup2}, and a {@link NativeOutputDrain} reads the pipe into a target stream a
+ * complete line at a time.
+ * <p>
+ * This facility is opt-in and only available on Linux with Java 22 or later, where it uses the foreign function API;
+ * see {@link #isSupported()}. Start the JVM with {@code --enable-native-access} for this library to avoid the warning
+ * about restricted methods.
+ * <p>
+ * While the capture is active, the original {@code System.out} and {@code System.err} streams write into the pipes as
+ * well, so a target must not write to them, directly or through a handler such as a
+ * {@link java.util.logging.ConsoleHandler ConsoleHandler}; that would feed its own output back to itself. A
+ * {@code null} target writes to the original descriptor instead, which keeps the output where it was going while
+ * accounting for it in {@link #getCapturedBytes()}; it is written to a duplicate of the descriptor with {@code write},
+ * so this works for any kind of descriptor, including the socket which systemd connects to the journal. When the
+ * capture is stopped, including at JVM shutdown, the original descriptors are restored first, then the pipes are read
+ * to their end before the drains stop, so nothing written before the restoration is lost.
+ */
+public final class NativeOutputCapture {
+
+    private static final int STDOUT = 1;
+    private static final int STDERR = 2;
+    private static final long STOP_TIMEOUT_MILLIS = 2000L;
+
+    private static final AtomicBoolean active = new AtomicBoolean();
+
+    private final Redirect out;
+    private final Redirect err;
+    private final Thread shutdownHook;
+    private boolean stopped;
+
+    private NativeOutputCapture(final Redirect out, final Redirect err) {
+        this.out = out;
+        this.err = err;
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                stopQuietly();
+            }
+        }, "stdio-native-capture-shutdown");
+    }
+
+    /**
+     * Determine whether native output can be captured on this platform and Java version.
+     *
+     * @return {@code true} if {@link #start(PrintStream, PrintStream)} is supported
+     */
+    public static boolean isSupported() {
+        return NativeFileDescriptors.isSupported();
+    }
+
+    /**
+     * Start capturing file descriptors 1 and 2.
+     *
+     * @param outTarget the stream to write the output of descriptor 1 to, or {@code null} to write it to the original
+     *                  descriptor
+     * @param errTarget the stream to write the output of descriptor 2 to, or {@code null} to write it to the original
+     *                  descriptor
+     * @return the active capture
+     * @throws IOException                   if the descriptors cannot be redirected
+     * @throws SecurityException             if the caller does not have the {@code installStdioContextSelector}
+     *                                       {@link RuntimePermission}
+     * @throws IllegalStateException         if a capture is already active
+     * @throws UnsupportedOperationException if capturing is not {@linkplain #isSupported() supported}
+     */
+    public static NativeOutputCapture start(final PrintStream outTarget, final PrintStream errTarget)
+            throws IOException, SecurityException, IllegalStateException, UnsupportedOperationException {
+        StdioContext.checkInstallPermission();
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Capturing native output requires Linux and Java 22 or later");
+        }
+        if (!active.compareAndSet(false, true)) {
+            throw new IllegalStateException("Native output is already captured");
+        }
+        Redirect out = null;
+        try {
+            out = Redirect.start(STDOUT, outTarget, "stdio-native-stdout");
+            final Redirect err = Redirect.start(STDERR, errTarget, "stdio-native-stderr");
+            final NativeOutputCapture capture = new NativeOutputCapture(out, err);
+            Runtime.getRuntime().addShutdownHook(capture.shutdownHook);
+            return capture;
+        } catch (IOException | RuntimeException e) {
+            if (out != null) {
+                try {
+                    out.stop();
+                } catch (IOException e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            active.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of bytes captured from both descriptors so far.
+     *
+     * @return the number of captured bytes
+     */
+    public long getCapturedBytes() {
+        return out.drain.getDrainedBytes() + err.drain.getDrainedBytes();
+    }
+
+    /**
+     * Stop capturing. The original descriptors are restored, and everything written to the pipes before that is
+     * written to the targets, waiting up to two seconds for it.
+     *
+     * @throws IOException if a descriptor cannot be restored
+     */
+    public void stop() throws IOException {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // shutdown in progress; the hook stops the capture
+        }
+        stop0();
+    }
+
+    private synchronized void stop0() throws IOException {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        // push out what Java code buffered for the descriptors while they are still captured
+        System.out.flush();
+        System.err.flush();
+        try {
+            out.stop();
+        } finally {
+            try {
+                err.stop();
+            } finally {
+                active.set(false);
+            }
+        }
+    }
+
+    private void stopQuietly() {
+        try {
+            stop0();
+        } catch (IOException ignored) {
+            // nothing left to report it to
+        }
+    }
+
+    private static String path(final int fd) {
+        return "/proc/self/fd/" + fd;
+    }
+
+    /**
+     * An output stream which writes to a descriptor it does not own; closing it does not close the descriptor.
+     */
+    private static final class DescriptorOutputStream extends OutputStream {
+        private final int fd;
+
+        DescriptorOutputStream(final int fd) {
+            this.fd = fd;
+        }
+
+        /** {@inheritDoc} */
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        /** {@inheritDoc} */
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            NativeFileDescriptors.write(fd, b, off, len);
+        }
+    }
+
+    /**
+     * The redirection of one descriptor into a pipe.
+     */
+    private static final class Redirect {
+        private final int fd;
+        private final int saved;
+        private final NativeOutputDrain drain;
+        private final PrintStream original;
+
+        private Redirect(final int fd, final int saved, final NativeOutputDrain drain, final PrintStream original) {
+            this.fd = fd;
+            this.saved = saved;
+            this.drain = drain;
+            this.original = original;
+        }
+
+        static Redirect start(final int fd, final PrintStream target, final String name) throws IOException {
+            final int saved = NativeFileDescriptors.dup(fd);
+            PrintStream original = null;
+            FileInputStream source = null;
+            int[] pipe = null;
+            try {
+                if (target == null) {
+                    // written directly to the duplicate, since a socket cannot be reopened through /proc
+                    original = new PrintStream(new DescriptorOutputStream(saved), false);
+                }
+                pipe = NativeFileDescriptors.pipe();
+                // open the read end while the write end is still open, as opening a pipe for reading waits for a writer
+                source = new FileInputStream(path(pipe[0]));
+                NativeFileDescriptors.close(pipe[0]);
+                pipe[0] = -1;
+                NativeFileDescriptors.dup2(pipe[1], fd);
+                NativeFileDescriptors.close(pipe[1]);
+                pipe[1] = -1;
+            } catch (IOException | RuntimeException e) {
+                if (source != null) {
+                    source.close();
+                }
+                if (pipe != null) {
+                    closeQuietly(pipe[0]);
+                    closeQuietly(pipe[1]);
+                }
+                closeQuietly(saved);
+                throw e;
+            }
+            final NativeOutputDrain drain = NativeOutputDrain.startWithoutShutdownHook(source,
+                    target != null ? target : original, name);
+            return new Redirect(fd, saved, drain, original);
+        }
+
+        void stop() throws IOException {
+            try {
+                // this drops the last reference to the write end, so the drain reads up to the end of the pipe
+                NativeFileDescriptors.dup2(saved, fd);
+                drain.stop(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } finally {
+                if (original != null) {
+                    original.flush();
+                }
+                NativeFileDescriptors.close(saved);
+            }
+        }
+
+        private static void closeQuietly(final int fd) {
+            if (fd == -1) {
+                return;
+            }
+            try {
+                NativeFileDescriptors.close(fd);
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+    }
+}
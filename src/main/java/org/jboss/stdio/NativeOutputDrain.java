@@ -0,0 +1,211 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the read end of a pipe which native code writes to into a print stream, one complete line at a time. This is
+ * the Java half of capturing output which native libraries and the JVM write directly to file descriptors 1 and 2:
+ * {@link NativeOutputCapture} replaces the descriptors with the write end of a pipe and gives the read end to this
+ * class. It can also be used with a pipe set up by a launcher.
+ * <p>
+ * Reading uses a large buffer and hands each batch of complete lines to the target in a single write. A partial line
+ * is held back until its end arrives, the buffer fills, the pipe is closed, or the JVM shuts down. At shutdown, the
+ * reader is given up to two seconds to consume everything already written to the pipe before the remaining partial
+ * line is written out.
+ */
+public final class NativeOutputDrain {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final long SHUTDOWN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2L);
+
+    private final InputStream source;
+    private final PrintStream target;
+    private final Thread reader;
+    private final Thread shutdownHook;
+    private final AtomicLong drainedBytes = new AtomicLong();
+    // guarded by buffer
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private volatile boolean inFlight;
+
+    private NativeOutputDrain(final InputStream source, final PrintStream target, final String name) {
+        this.source = source;
+        this.target = target;
+        reader = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, name);
+        reader.setDaemon(true);
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                drainAtShutdown();
+            }
+        }, name + "-shutdown");
+    }
+
+    /**
+     * Start draining the given pipe into the given stream.
+     *
+     * @param source the read end of the pipe
+     * @param target the stream to write the lines to, for example an output stream of the original system context or
+     *               of a logging context
+     * @param name   the name of the reader thread
+     * @return the running drain
+     */
+    public static NativeOutputDrain start(final InputStream source, final PrintStream target, final String name) {
+        final NativeOutputDrain drain = startWithoutShutdownHook(source, target, name);
+        Runtime.getRuntime().addShutdownHook(drain.shutdownHook);
+        return drain;
+    }
+
+    /**
+     * Start draining without a shutdown hook, for callers which stop the drain from their own hook.
+     */
+    static NativeOutputDrain startWithoutShutdownHook(final InputStream source, final PrintStream target,
+            final String name) {
+        if (source == null) {
+            throw new NullPointerException("source is null");
+        }
+        if (target == null) {
+            throw new NullPointerException("target is null");
+        }
+        final NativeOutputDrain drain = new NativeOutputDrain(source, target, name);
+        drain.reader.start();
+        return drain;
+    }
+
+    /**
+     * Get the number of bytes read from the pipe so far.
+     *
+     * @return the number of drained bytes
+     */
+    public long getDrainedBytes() {
+        return drainedBytes.get();
+    }
+
+    /**
+     * Stop draining and close the pipe. Any partial line is written out.
+     *
+     * @throws IOException if the pipe cannot be closed
+     */
+    public void stop() throws IOException {
+        stop(0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop draining, after waiting up to the given time for the writing side to close the pipe and for everything
+     * written to it to be read. Then the pipe is closed and any partial line is written out.
+     *
+     * @param timeout the maximum time to wait for the end of the pipe
+     * @param unit    the unit of the timeout
+     * @throws IOException if the pipe cannot be closed
+     */
+    public void stop(final long timeout, final TimeUnit unit) throws IOException {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // shutdown in progress; the hook takes care of the rest
+        }
+        final long millis = unit.toMillis(timeout);
+        if (millis > 0L) {
+            try {
+                reader.join(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        source.close();
+        try {
+            reader.join(TimeUnit.NANOSECONDS.toMillis(SHUTDOWN_TIMEOUT_NANOS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (buffer) {
+            writeLines(true);
+        }
+    }
+
+    private void drain() {
+        final byte[] chunk = new byte[BUFFER_SIZE];
+        try {
+            for (;;) {
+                final int cnt = source.read(chunk);
+                if (cnt == -1) {
+                    break;
+                }
+                inFlight = true;
+                drainedBytes.addAndGet(cnt);
+                synchronized (buffer) {
+                    append(chunk, cnt);
+                    writeLines(false);
+                }
+                inFlight = false;
+            }
+        } catch (IOException ignored) {
+            // the pipe was closed
+        }
+        synchronized (buffer) {
+            writeLines(true);
+        }
+    }
+
+    /**
+     * Append to the buffer, writing out a partial line which would not fit. Must be called with the buffer lock.
+     */
+    private void append(final byte[] chunk, final int cnt) {
+        if (cnt > buffer.length - count) {
+            writeLines(false);
+            if (cnt > buffer.length - count) {
+                writeLines(true);
+            }
+        }
+        System.arraycopy(chunk, 0, buffer, count, cnt);
+        count += cnt;
+    }
+
+    private void drainAtShutdown() {
+        final long start = System.nanoTime();
+        try {
+            // let the reader consume what was written before shutdown
+            while ((source.available() > 0 || inFlight) && System.nanoTime() - start < SHUTDOWN_TIMEOUT_NANOS) {
+                Thread.sleep(1L);
+            }
+        } catch (IOException | InterruptedException ignored) {
+            // write out what we have
+        }
+        synchronized (buffer) {
+            writeLines(true);
+        }
+        target.flush();
+    }
+
+    /**
+     * Write the complete lines in the buffer, or everything if {@code all} is set. Must be called with the buffer lock.
+     */
+    private void writeLines(final boolean all) {
+        final byte[] buffer = this.buffer;
+        int end = count;
+        if (!all) {
+            while (end > 0 && buffer[end - 1] != '\n') {
+                end--;
+            }
+        }
+        if (end == 0) {
+            return;
+        }
+        target.write(buffer, 0, end);
+        target.flush();
+        System.arraycopy(buffer, end, buffer, 0, count - end);
+        count -= end;
+    }
+}
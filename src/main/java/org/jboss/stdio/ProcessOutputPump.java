@@ -0,0 +1,203 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the output of child processes into the current {@link StdioContext}. Each output stream of a process is copied
+ * with {@link InputStream#transferTo(OutputStream)} by its own reader until the end of the stream, which is reached
+ * only when every process holding the pipe, including background grandchildren, has exited or closed it.
+ * <p>
+ * A process must be attached before it exits. When a process exits, the JDK drains what is buffered in its pipes and
+ * closes them as soon as no read is in progress; output written after that, for example by a grandchild, is lost, and
+ * {@link #attach(Process, String)} therefore returns only once both readers are running.
+ * <p>
+ * Each attached process costs two readers for as long as its pipes are open. On Java 21 and later they are virtual
+ * threads, which saves the creation and stacks of platform threads; but reading a pipe is blocking file I/O, during
+ * which a virtual thread keeps its carrier and the scheduler adds another carrier to make up for it, so a reader
+ * waiting for output still occupies an operating system thread. On older versions each process costs two daemon
+ * platform threads.
+ */
+public final class ProcessOutputPump {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method UNSTARTED;
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    static {
+        Method ofVirtual = null;
+        Method unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException ignored) {
+            // virtual threads are not available; use platform threads
+        }
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+    }
+
+    private ProcessOutputPump() {
+    }
+
+    /**
+     * Copy the standard output and standard error of a process to the output and error streams of the current
+     * context.
+     *
+     * @param process the process
+     * @return a future which completes with the process once all of its output has been copied
+     */
+    public static CompletableFuture<Process> attach(final Process process) {
+        return attach(process, null);
+    }
+
+    /**
+     * Copy the standard output and standard error of a process to the output and error streams of the current
+     * context, starting each line with the given prefix.
+     *
+     * @param process the process
+     * @param prefix  the prefix of each line, or {@code null} for none
+     * @return a future which completes with the process once all of its output has been copied
+     */
+    public static CompletableFuture<Process> attach(final Process process, final String prefix) {
+        if (process == null) {
+            throw new NullPointerException("process is null");
+        }
+        final StdioContext context = StdioContext.getStdioContext();
+        final byte[] prefixBytes = prefix == null ? null : prefix.getBytes(Charset.defaultCharset());
+        final CompletableFuture<Process> future = new CompletableFuture<Process>();
+        final Route out = new Route(process, process.getInputStream(), context.getOut(), prefixBytes, future);
+        final Route err = new Route(process, process.getErrorStream(), context.getErr(), prefixBytes, future);
+        out.sibling = err;
+        err.sibling = out;
+        final int id = counter.incrementAndGet();
+        final CountDownLatch started = new CountDownLatch(2);
+        out.started = started;
+        err.started = started;
+        newThread(out, "stdio-process-pump-" + id + "-out").start();
+        newThread(err, "stdio-process-pump-" + id + "-err").start();
+        // when the process exits, the JDK closes a pipe which is not being read; make sure ours are read on return
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                started.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return future;
+    }
+
+    private static Thread newThread(final Runnable task, final String name) {
+        if (OF_VIRTUAL != null) {
+            try {
+                final Thread thread = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+                thread.setName(name);
+                return thread;
+            } catch (ReflectiveOperationException ignored) {
+                // fall back to a platform thread
+            }
+        }
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * One output stream of a process, copied to its target and prefixed line by line.
+     */
+    private static final class Route extends OutputStream implements Runnable {
+        private final Process process;
+        private final InputStream in;
+        private final PrintStream target;
+        private final byte[] prefix;
+        private final CompletableFuture<Process> future;
+        private Route sibling;
+        private CountDownLatch started;
+        private boolean atLineStart = true;
+        // guarded by future
+        private boolean done;
+
+        Route(final Process process, final InputStream in, final PrintStream target, final byte[] prefix,
+                final CompletableFuture<Process> future) {
+            this.process = process;
+            this.in = in;
+            this.target = target;
+            this.prefix = prefix;
+            this.future = future;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            started.countDown();
+            try {
+                in.transferTo(this);
+            } catch (IOException ignored) {
+                // the stream was closed or broke; nothing more will come
+            } finally {
+                finish();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void write(final int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        /** {@inheritDoc} */
+        public void write(final byte[] buffer, final int off, final int len) {
+            final byte[] prefix = this.prefix;
+            if (prefix == null) {
+                target.write(buffer, off, len);
+                return;
+            }
+            final int end = off + len;
+            int mark = off;
+            for (int i = off; i < end; i++) {
+                if (atLineStart) {
+                    target.write(prefix, 0, prefix.length);
+                    atLineStart = false;
+                }
+                if (buffer[i] == '\n') {
+                    target.write(buffer, mark, i + 1 - mark);
+                    mark = i + 1;
+                    atLineStart = true;
+                }
+            }
+            if (mark < end) {
+                target.write(buffer, mark, end - mark);
+            }
+        }
+
+        private void finish() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            target.flush();
+            // whichever reader finishes last completes the future
+            synchronized (future) {
+                done = true;
+                if (sibling.done) {
+                    future.complete(process);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of {@link StdioContext#swapStdioContextSelector(StdioContextSelector, long, java.util.concurrent.TimeUnit,
+ * StdioContext...)} and {@link StdioContext#uninstall(long, java.util.concurrent.TimeUnit, StdioContext...)}.
+ */
+public final class SelectorSwapResult {
+
+    private final long inFlightCalls;
+    private final List<String> partialLines;
+
+    SelectorSwapResult(final long inFlightCalls, final List<String> partialLines) {
+        this.inFlightCalls = inFlightCalls;
+        this.partialLines = Collections.unmodifiableList(partialLines);
+    }
+
+    /**
+     * Determine whether all calls in progress on the old selector finished before the timeout.
+     *
+     * @return {@code true} if no call was left in progress
+     */
+    public boolean isQuiescent() {
+        return inFlightCalls == 0L;
+    }
+
+    /**
+     * Get the number of calls still in progress on the old selector when the timeout expired.
+     *
+     * @return the number of calls left in progress, or 0 if the swap was quiescent
+     */
+    public long getInFlightCalls() {
+        return inFlightCalls;
+    }
+
+    /**
+     * Get the partial lines which were left in the buffers of the retired contexts and have been logged as complete
+     * lines. This is always empty if the swap was not quiescent.
+     *
+     * @return the partial lines
+     */
+    public List<String> getPartialLines() {
+        return partialLines;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The files named {@code <prefix>.<sequence><suffix>} which rolling streams leave in a directory, so that a new
+ * stream continues the sequence of an earlier run instead of overwriting its files.
+ */
+final class SequencedFiles {
+
+    private SequencedFiles() {
+    }
+
+    /**
+     * Find the existing files of a sequence.
+     *
+     * @param directory the directory to look in
+     * @param prefix    the file name prefix
+     * @param suffix    the file name suffix
+     * @param found     the collection to add the files to, oldest first
+     * @return the highest sequence number found, or 0 if there are no files
+     * @throws IOException if the directory cannot be read
+     */
+    static long scan(final Path directory, final String prefix, final String suffix, final Collection<Path> found)
+            throws IOException {
+        final TreeMap<Long, Path> files = new TreeMap<Long, Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                final int start = prefix.length() + 1;
+                final int end = name.length() - suffix.length();
+                if (end <= start || !name.startsWith(prefix) || name.charAt(prefix.length()) != '.'
+                        || !name.endsWith(suffix) || end - start > 18) {
+                    continue;
+                }
+                long sequence = 0L;
+                for (int i = start; i < end && sequence != -1L; i++) {
+                    final char c = name.charAt(i);
+                    sequence = c >= '0' && c <= '9' ? sequence * 10L + (c - '0') : -1L;
+                }
+                if (sequence > 0L) {
+                    files.put(Long.valueOf(sequence), path);
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> entry : files.entrySet()) {
+            found.add(entry.getValue());
+        }
+        return files.isEmpty() ? 0L : files.lastKey().longValue();
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A single reader of an input stream, normally the process standard input, which shares the data among several
+ * consumers so that they do not race each other for it. Each consumer is an input stream which can be given to its own
+ * {@link StdioContext}:
+ * <ul>
+ * <li>a {@linkplain #openBroadcast() broadcast} consumer sees every byte read after it was opened, through its own
+ * cursor into a shared ring buffer;</li>
+ * <li>a {@linkplain #openDispatch(Predicate) dispatch} consumer receives the whole lines accepted by its predicate. Each
+ * line is offered to the dispatch consumers in the order they were opened and goes to the first one which accepts it;
+ * lines which no consumer accepts are discarded.</li>
+ * </ul>
+ * The memory held for a consumer is bounded by the capacity of the demultiplexer. When a consumer falls that far
+ * behind, the reader thread stops reading until the consumer catches up or is closed, which in turn leaves the rest of
+ * the input in the operating system's pipe. Consumers copy out as much as is available with each read.
+ * <p>
+ * The reader thread is started when the first consumer is opened. Lines longer than the capacity are dispatched in
+ * pieces of the capacity. Predicates are called by the reader thread while the consumers are locked, so they should
+ * be quick and must not read from this demultiplexer.
+ */
+public final class StdinDemultiplexer implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 65536;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final InputStream source;
+    private final Charset charset;
+    private final byte[] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+
+    // all guarded by lock
+    private final ArrayList<Broadcast> broadcasts = new ArrayList<Broadcast>();
+    private final ArrayList<Dispatch> dispatches = new ArrayList<Dispatch>();
+    private final byte[] line;
+    private int lineLength;
+    private long writePosition;
+    private long discardedLines;
+    private boolean eof;
+    private IOException failure;
+    private boolean closed;
+    private Thread reader;
+
+    /**
+     * Construct a new instance with a capacity of 64 KiB, which decodes lines for the dispatch predicates with the
+     * default charset.
+     *
+     * @param source the stream to read from
+     */
+    public StdinDemultiplexer(final InputStream source) {
+        this(source, DEFAULT_CAPACITY, Charset.defaultCharset());
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param source   the stream to read from
+     * @param capacity the number of bytes held for each consumer
+     * @param charset  the charset to decode lines for the dispatch predicates with
+     */
+    public StdinDemultiplexer(final InputStream source, final int capacity, final Charset charset) {
+        if (source == null) {
+            throw new NullPointerException("source is null");
+        }
+        if (charset == null) {
+            throw new NullPointerException("charset is null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.source = source;
+        this.charset = charset;
+        ring = new byte[capacity];
+        line = new byte[capacity];
+    }
+
+    /**
+     * Get the demultiplexer of the process standard input, as it was before {@link StdioContext#install()}. Use it
+     * instead of reading {@code System.in} directly when more than one context needs the standard input.
+     *
+     * @return the demultiplexer of the process standard input
+     */
+    public static StdinDemultiplexer getSystemDemultiplexer() {
+        return SystemHolder.INSTANCE;
+    }
+
+    /**
+     * Open a consumer which receives every byte read from now on.
+     *
+     * @return the consumer stream
+     * @throws IllegalStateException if this demultiplexer is closed
+     */
+    public InputStream openBroadcast() throws IllegalStateException {
+        lock.lock();
+        try {
+            checkOpen();
+            final Broadcast broadcast = new Broadcast(writePosition);
+            broadcasts.add(broadcast);
+            startReader();
+            return broadcast;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Open a consumer which receives the lines, including their line terminator, which the given predicate accepts.
+     * The predicate is given the line without its terminator.
+     *
+     * @param predicate the predicate selecting the lines for this consumer
+     * @return the consumer stream
+     * @throws IllegalStateException if this demultiplexer is closed
+     */
+    public InputStream openDispatch(final Predicate<String> predicate) throws IllegalStateException {
+        if (predicate == null) {
+            throw new NullPointerException("predicate is null");
+        }
+        lock.lock();
+        try {
+            checkOpen();
+            final Dispatch dispatch = new Dispatch(predicate, ring.length);
+            dispatches.add(dispatch);
+            startReader();
+            return dispatch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of complete lines which no dispatch consumer accepted.
+     *
+     * @return the number of discarded lines
+     */
+    public long getDiscardedLines() {
+        lock.lock();
+        try {
+            return discardedLines;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close this demultiplexer. All consumers reach the end of their stream once they have read what they were given.
+     * The source is not closed; the reader thread exits when its current read returns.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            broadcasts.clear();
+            dispatches.clear();
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Demultiplexer is closed");
+        }
+    }
+
+    private void startReader() {
+        if (reader == null) {
+            reader = new Thread(new Runnable() {
+                public void run() {
+                    readLoop();
+                }
+            }, "stdio-stdin-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void readLoop() {
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, ring.length)];
+        for (;;) {
+            int cnt;
+            IOException exception = null;
+            try {
+                cnt = source.read(chunk);
+            } catch (IOException e) {
+                cnt = -1;
+                exception = e;
+            }
+            lock.lock();
+            try {
+                if (cnt == -1) {
+                    if (lineLength > 0) {
+                        dispatchLine();
+                    }
+                    eof = true;
+                    failure = exception;
+                    readable.signalAll();
+                    return;
+                }
+                while (!closed && ring.length - (writePosition - minimumBroadcastPosition()) < cnt) {
+                    writable.await();
+                }
+                if (closed) {
+                    return;
+                }
+                copyIn(ring, writePosition, chunk, 0, cnt);
+                writePosition += cnt;
+                readable.signalAll();
+                if (!dispatches.isEmpty()) {
+                    splitLines(chunk, cnt);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long minimumBroadcastPosition() {
+        long min = writePosition;
+        for (Broadcast broadcast : broadcasts) {
+            min = Math.min(min, broadcast.position);
+        }
+        return min;
+    }
+
+    private void splitLines(final byte[] chunk, final int cnt) throws InterruptedException {
+        int start = 0;
+        for (int i = 0; i < cnt; i++) {
+            if (chunk[i] == '\n' || lineLength + i - start + 1 == line.length) {
+                final int len = i - start + 1;
+                System.arraycopy(chunk, start, line, lineLength, len);
+                lineLength += len;
+                start = i + 1;
+                dispatchLine();
+            }
+        }
+        System.arraycopy(chunk, start, line, lineLength, cnt - start);
+        lineLength += cnt - start;
+    }
+
+    private void dispatchLine() throws InterruptedException {
+        final int length = lineLength;
+        lineLength = 0;
+        int end = length;
+        if (end > 0 && line[end - 1] == '\n') {
+            end--;
+            if (end > 0 && line[end - 1] == '\r') {
+                end--;
+            }
+        }
+        final String text = new String(line, 0, end, charset);
+        for (Dispatch dispatch : dispatches) {
+            final boolean accepted;
+            try {
+                accepted = dispatch.predicate.test(text);
+            } catch (RuntimeException ignored) {
+                continue;
+            }
+            if (accepted) {
+                while (!closed && !dispatch.closed && dispatch.buffer.length - dispatch.remaining() < length) {
+                    writable.await();
+                }
+                if (!closed && !dispatch.closed) {
+                    copyIn(dispatch.buffer, dispatch.end, line, 0, length);
+                    dispatch.end += length;
+                    readable.signalAll();
+                }
+                return;
+            }
+        }
+        discardedLines++;
+    }
+
+    private static void copyIn(final byte[] ring, final long position, final byte[] b, final int off, final int len) {
+        final int idx = (int) (position % ring.length);
+        final int first = Math.min(len, ring.length - idx);
+        System.arraycopy(b, off, ring, idx, first);
+        System.arraycopy(b, off + first, ring, 0, len - first);
+    }
+
+    private static void copyOut(final byte[] ring, final long position, final byte[] b, final int off, final int len) {
+        final int idx = (int) (position % ring.length);
+        final int first = Math.min(len, ring.length - idx);
+        System.arraycopy(ring, idx, b, off, first);
+        System.arraycopy(ring, 0, b, off + first, len - first);
+    }
+
+    /**
+     * A consumer stream, reading from a ring buffer up to a write position which the reader thread advances.
+     */
+    private abstract class Consumer extends InputStream {
+        // all guarded by lock
+        long position;
+        boolean closed;
+
+        Consumer(final long position) {
+            this.position = position;
+        }
+
+        abstract byte[] ring();
+
+        abstract long limit();
+
+        abstract void unregister();
+
+        long remaining() {
+            return limit() - position;
+        }
+
+        /** {@inheritDoc} */
+        public int read() throws IOException {
+            lock.lock();
+            try {
+                if (!awaitData()) {
+                    return -1;
+                }
+                final byte[] ring = ring();
+                final int b = ring[(int) (position % ring.length)] & 0xff;
+                position++;
+                writable.signalAll();
+                return b;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                if (!awaitData()) {
+                    return -1;
+                }
+                final int cnt = (int) Math.min(len, remaining());
+                copyOut(ring(), position, b, off, cnt);
+                position += cnt;
+                writable.signalAll();
+                return cnt;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait until there is data to read or the end of the stream is reached. Must be called with the lock held.
+         *
+         * @return {@code true} if there is data to read, {@code false} at the end of the stream
+         */
+        private boolean awaitData() throws IOException, InterruptedException {
+            for (;;) {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (remaining() > 0) {
+                    return true;
+                }
+                if (eof || StdinDemultiplexer.this.closed) {
+                    if (failure != null) {
+                        throw new IOException("Failed to read the source", failure);
+                    }
+                    return false;
+                }
+                readable.await();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public int available() throws IOException {
+            lock.lock();
+            try {
+                return closed ? 0 : (int) Math.min(Integer.MAX_VALUE, remaining());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    unregister();
+                    writable.signalAll();
+                    readable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class Broadcast extends Consumer {
+        Broadcast(final long position) {
+            super(position);
+        }
+
+        byte[] ring() {
+            return ring;
+        }
+
+        long limit() {
+            return writePosition;
+        }
+
+        void unregister() {
+            broadcasts.remove(this);
+        }
+    }
+
+    private final class Dispatch extends Consumer {
+        private final Predicate<String> predicate;
+        private final byte[] buffer;
+        // guarded by lock
+        long end;
+
+        Dispatch(final Predicate<String> predicate, final int capacity) {
+            super(0L);
+            this.predicate = predicate;
+            buffer = new byte[capacity];
+        }
+
+        byte[] ring() {
+            return buffer;
+        }
+
+        long limit() {
+            return end;
+        }
+
+        void unregister() {
+            dispatches.remove(this);
+        }
+    }
+
+    private static final class SystemHolder {
+        static final StdinDemultiplexer INSTANCE = new StdinDemultiplexer(StdioContext.getSystemIn());
+    }
+}
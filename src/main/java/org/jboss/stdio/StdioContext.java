@@ -5,13 +5,21 @@
 
 package org.jboss.stdio;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 
 /**
  * A context for console input and output.
@@ -19,11 +27,9 @@ import java.util.concurrent.atomic.AtomicReference;
 public final class StdioContext {
     private static final StdioContext SYSTEM_STDIO_CONTEXT = new StdioContext(System.in, System.out, System.err);
 
-    private static final ThreadLocal<Boolean> entered = new ThreadLocal<Boolean>();
-
-    private static final Permission CREATE_CONTEXT_PERMISSION = new RuntimePermission("createStdioContext", null);
-    private static final Permission SET_CONTEXT_SELECTOR_PERMISSION = new RuntimePermission("setStdioContextSelector", null);
-    private static final Permission INSTALL_PERMISSION = new RuntimePermission("installStdioContextSelector", null);
+    private static final ThreadLocal<Epoch> entered = new ThreadLocal<Epoch>();
+    private static final ThreadLocal<StdioContext> threadContext = new ThreadLocal<StdioContext>();
+    private static final ThreadLocal<CaptureBuffers> captureBuffers = new ThreadLocal<CaptureBuffers>();
 
     private enum State {
         UNINSTALLED,
@@ -37,11 +43,21 @@ public final class StdioContext {
     private final InputStream in;
     private final PrintStream out;
     private final PrintStream err;
+    // the streams wrapped by out and err, if known; used to recover partial lines when the context is retired
+    private final OutputStream rawOut;
+    private final OutputStream rawErr;
 
     StdioContext(final InputStream in, final PrintStream out, final PrintStream err) {
+        this(in, out, err, null, null);
+    }
+
+    StdioContext(final InputStream in, final PrintStream out, final PrintStream err, final OutputStream rawOut,
+            final OutputStream rawErr) {
         this.in = in;
         this.out = out;
         this.err = err;
+        this.rawOut = rawOut;
+        this.rawErr = rawErr;
     }
 
     /**
@@ -57,7 +73,7 @@ public final class StdioContext {
             throws SecurityException {
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
-            sm.checkPermission(CREATE_CONTEXT_PERMISSION);
+            sm.checkPermission(Permissions.CREATE_CONTEXT);
         }
         return new StdioContext(in, out, err);
     }
@@ -73,7 +89,57 @@ public final class StdioContext {
      */
     public static StdioContext create(final InputStream in, final OutputStream out, final OutputStream err)
             throws SecurityException {
-        return create(in, new PrintStream(out, true), new PrintStream(err, true));
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(Permissions.CREATE_CONTEXT);
+        }
+        return new StdioContext(in, new PrintStream(out, true), new PrintStream(err, true), out, err);
+    }
+
+    /**
+     * Create a console I/O context which logs its output. The logging streams are obtained from
+     * {@link LoggingOutputStream#getShared(String, Level, Charset)} using the default charset, so contexts created with
+     * the same categories and levels share them.
+     *
+     * @param in          the input stream for this context
+     * @param outCategory the log category for the output stream
+     * @param outLevel    the level at which to log the output stream
+     * @param errCategory the log category for the error stream
+     * @param errLevel    the level at which to log the error stream
+     * @return the new context
+     * @throws SecurityException if the caller does not have the {@code createStdioContext} {@link RuntimePermission}
+     */
+    public static StdioContext createLogging(final InputStream in, final String outCategory, final Level outLevel,
+            final String errCategory, final Level errLevel) throws SecurityException {
+        final Charset charset = Charset.defaultCharset();
+        return create(in, LoggingOutputStream.getShared(outCategory, outLevel, charset),
+                LoggingOutputStream.getShared(errCategory, errLevel, charset));
+    }
+
+    /**
+     * Create a buffered console I/O context. Unlike {@link #create(InputStream, OutputStream, OutputStream)}, the
+     * resulting print streams do not flush on every line; output is written to the given streams when the buffer is
+     * full, when the print stream is flushed or closed, at JVM shutdown, and no later than {@code maxLatency} after it
+     * was buffered. This is meant for file- or pipe-backed streams; use the unbuffered variant for interactive terminals.
+     *
+     * @param in         the input stream for this context
+     * @param out        the output stream for this context
+     * @param err        the error stream for this context
+     * @param bufferSize the size of the buffer of each output stream, in bytes
+     * @param maxLatency the maximum time buffered output may wait before it is written
+     * @param unit       the unit of the maximum latency
+     * @return the new context
+     * @throws SecurityException if the caller does not have the {@code createStdioContext} {@link RuntimePermission}
+     */
+    public static StdioContext createBuffered(final InputStream in, final OutputStream out, final OutputStream err,
+            final int bufferSize, final long maxLatency, final TimeUnit unit) throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(Permissions.CREATE_CONTEXT);
+        }
+        return new StdioContext(in,
+                new PrintStream(new LatencyBoundedOutputStream(out, bufferSize, maxLatency, unit), false),
+                new PrintStream(new LatencyBoundedOutputStream(err, bufferSize, maxLatency, unit), false), out, err);
     }
 
     /**
@@ -82,7 +148,57 @@ public final class StdioContext {
      * @return the current context
      */
     public static StdioContext getStdioContext() {
-        return stdioContextSelector.getStdioContext();
+        final StdioContext context = threadContext.get();
+        if (context != null) {
+            return context;
+        }
+        // a call in progress on the installed streams stays with the selector it started with
+        final Epoch current = entered.get();
+        return (current != null ? current : epoch).selector.getStdioContext();
+    }
+
+    /**
+     * Run a task with the output and error streams of the current thread captured. Only output written by the current
+     * thread through the installed {@link System#out} and {@link System#err} is captured; other threads are unaffected.
+     * The capture buffers are reused by subsequent captures on the same thread.
+     *
+     * @param task the task to run
+     * @return the captured output
+     * @throws SecurityException     if the caller does not have the {@code createStdioContext} {@link RuntimePermission}
+     * @throws IllegalStateException if the streams are not installed
+     */
+    public static CapturedOutput capture(final Runnable task) throws SecurityException, IllegalStateException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(Permissions.CREATE_CONTEXT);
+        }
+        if (state.get() != State.INSTALLED) {
+            throw new IllegalStateException("Not installed");
+        }
+        CaptureBuffers buffers = captureBuffers.get();
+        if (buffers == null) {
+            buffers = new CaptureBuffers();
+        } else {
+            // nested captures on the same thread get their own buffers
+            captureBuffers.remove();
+        }
+        final StdioContext previous = threadContext.get();
+        buffers.context = new StdioContext(previous != null ? previous.in : epoch.selector.getStdioContext().in,
+                buffers.outStream, buffers.errStream);
+        threadContext.set(buffers.context);
+        try {
+            task.run();
+            return new CapturedOutput(buffers.out.toByteArray(), buffers.err.toByteArray());
+        } finally {
+            if (previous == null) {
+                threadContext.remove();
+            } else {
+                threadContext.set(previous);
+            }
+            if (buffers.reset()) {
+                captureBuffers.set(buffers);
+            }
+        }
     }
 
     /**
@@ -112,7 +228,29 @@ public final class StdioContext {
         return err;
     }
 
-    private static volatile StdioContextSelector stdioContextSelector = new SimpleStdioContextSelector(SYSTEM_STDIO_CONTEXT);
+    /**
+     * Get the process standard input as it was before the streams were installed.
+     *
+     * @return the original standard input
+     */
+    static InputStream getSystemIn() {
+        return SYSTEM_STDIO_CONTEXT.in;
+    }
+
+    /**
+     * Check that the caller may replace the process standard streams.
+     *
+     * @throws SecurityException if the caller does not have the {@code installStdioContextSelector}
+     *                           {@link RuntimePermission}
+     */
+    static void checkInstallPermission() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(Permissions.INSTALL);
+        }
+    }
+
+    private static volatile Epoch epoch = new Epoch(new SimpleStdioContextSelector(SYSTEM_STDIO_CONTEXT));
 
     /**
      * Install the StdioContext streams.
@@ -122,26 +260,54 @@ public final class StdioContext {
      * @throws IllegalStateException if the streams are already installed
      */
     public static void install() throws SecurityException, IllegalStateException {
+        install(false);
+    }
+
+    /**
+     * Install the StdioContext streams. In atomic-line mode, each {@code print}, {@code println}, {@code printf},
+     * {@code format} and {@code append} call on {@link System#out} or {@link System#err} is first rendered into a
+     * reusable per-thread buffer, using the default charset, and then handed to the current context's stream in a
+     * single {@code write} call, so that output of other threads cannot land in the middle of it.
+     *
+     * @param atomicLines {@code true} to install the streams in atomic-line mode
+     * @throws SecurityException     if the caller does not have the {@code installStdioContextSelector}
+     *                               {@link RuntimePermission}
+     * @throws IllegalStateException if the streams are already installed
+     */
+    public static void install(final boolean atomicLines) throws SecurityException, IllegalStateException {
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
-            sm.checkPermission(INSTALL_PERMISSION);
+            sm.checkPermission(Permissions.INSTALL);
         }
         if (!state.compareAndSet(State.UNINSTALLED, State.INSTALLING)) {
             throw new IllegalStateException("Already installed");
         }
-        System.setOut(new DelegatingPrintStream() {
-            PrintStream getDelegate() {
-                return stdioContextSelector.getStdioContext().out;
-            }
-        });
-        System.setErr(new DelegatingPrintStream() {
-            PrintStream getDelegate() {
-                return stdioContextSelector.getStdioContext().err;
-            }
-        });
+        if (atomicLines) {
+            System.setOut(new AtomicLinePrintStream() {
+                PrintStream getDelegate() {
+                    return getStdioContext().out;
+                }
+            });
+            System.setErr(new AtomicLinePrintStream() {
+                PrintStream getDelegate() {
+                    return getStdioContext().err;
+                }
+            });
+        } else {
+            System.setOut(new DelegatingPrintStream() {
+                PrintStream getDelegate() {
+                    return getStdioContext().out;
+                }
+            });
+            System.setErr(new DelegatingPrintStream() {
+                PrintStream getDelegate() {
+                    return getStdioContext().err;
+                }
+            });
+        }
         System.setIn(new DelegatingInputStream() {
             InputStream getDelegate() {
-                return stdioContextSelector.getStdioContext().in;
+                return getStdioContext().in;
             }
         });
         state.set(State.INSTALLED);
@@ -157,7 +323,7 @@ public final class StdioContext {
     public static void uninstall() throws SecurityException, IllegalStateException {
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
-            sm.checkPermission(INSTALL_PERMISSION);
+            sm.checkPermission(Permissions.INSTALL);
         }
         if (!state.compareAndSet(State.INSTALLED, State.UNINSTALLING)) {
             throw new IllegalStateException("Already uninstalled");
@@ -181,9 +347,198 @@ public final class StdioContext {
         }
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
-            sm.checkPermission(SET_CONTEXT_SELECTOR_PERMISSION);
+            sm.checkPermission(Permissions.SET_CONTEXT_SELECTOR);
+        }
+        epoch = new Epoch(stdioContextSelector);
+    }
+
+    /**
+     * Replace the standard I/O context selector without losing output. Calls on the installed streams which are in
+     * progress keep writing to the context they started with; this method waits up to the given timeout for them to
+     * finish. If they do, the output and error streams of the retired contexts are flushed, and the partial lines left
+     * in their {@link WriterOutputStream} and {@link AbstractLoggingWriter} buffers are logged as complete lines and
+     * reported. Streams shared with other contexts, such as those of {@link #createLogging}, are flushed but keep their
+     * partial line. New calls use the new selector as soon as this method is called; they are never blocked.
+     * <p>
+     * If the timeout expires, the retired contexts are left alone, since flushing them would wait for the calls still in
+     * progress; those calls complete the output themselves. Calls which started before an earlier swap are not waited
+     * for.
+     *
+     * @param stdioContextSelector the selector to use
+     * @param timeout              the maximum time to wait for calls in progress
+     * @param unit                 the unit of the timeout
+     * @param retired              the contexts which are no longer selected by the new selector
+     * @return the result of the swap
+     * @throws SecurityException if the caller does not have the {@code setStdioContextSelector} {@link RuntimePermission}
+     */
+    public static SelectorSwapResult swapStdioContextSelector(final StdioContextSelector stdioContextSelector,
+            final long timeout, final TimeUnit unit, final StdioContext... retired) throws SecurityException {
+        if (stdioContextSelector == null) {
+            throw new NullPointerException("stdioContextSelector is null");
+        }
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(Permissions.SET_CONTEXT_SELECTOR);
+        }
+        return retire(stdioContextSelector, timeout, unit, retired);
+    }
+
+    /**
+     * Uninstall the StdioContext streams without losing output. The system streams are restored immediately; then, like
+     * {@link #swapStdioContextSelector(StdioContextSelector, long, TimeUnit, StdioContext...)}, this method waits up to
+     * the given timeout for calls in progress on the installed streams and then flushes the retired contexts.
+     *
+     * @param timeout the maximum time to wait for calls in progress
+     * @param unit    the unit of the timeout
+     * @param retired the contexts to flush
+     * @return the result of the uninstallation
+     * @throws SecurityException     if the caller does not have the {@code installStdioContextSelector}
+     *                               {@link RuntimePermission}
+     * @throws IllegalStateException if the streams are already uninstalled
+     */
+    public static SelectorSwapResult uninstall(final long timeout, final TimeUnit unit, final StdioContext... retired)
+            throws SecurityException, IllegalStateException {
+        uninstall();
+        return retire(epoch.selector, timeout, unit, retired);
+    }
+
+    private static SelectorSwapResult retire(final StdioContextSelector selector, final long timeout,
+            final TimeUnit unit, final StdioContext[] retired) {
+        final Epoch previous = epoch;
+        epoch = new Epoch(selector);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long pause = 10_000L;
+        long inFlight;
+        while ((inFlight = previous.inFlight()) > 0L) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            LockSupport.parkNanos(Math.min(pause, remaining));
+            pause = Math.min(pause * 2L, 1_000_000L);
+        }
+        final List<String> partialLines = new ArrayList<String>();
+        if (inFlight == 0L) {
+            for (StdioContext context : retired) {
+                context.out.flush();
+                context.err.flush();
+                addPartialLine(partialLines, context.rawOut);
+                addPartialLine(partialLines, context.rawErr);
+            }
+        }
+        return new SelectorSwapResult(inFlight, partialLines);
+    }
+
+    private static void addPartialLine(final List<String> partialLines, final OutputStream stream) {
+        // a shared stream's partial line may be in the middle of being written by a context which is still live
+        if (stream instanceof LoggingOutputStream && ((LoggingOutputStream) stream).isShared()) {
+            return;
+        }
+        if (stream instanceof WriterOutputStream) {
+            try {
+                final String partialLine = ((WriterOutputStream) stream).flushPartialLine();
+                if (partialLine != null) {
+                    partialLines.add(partialLine);
+                }
+            } catch (IOException ignored) {
+                // like PrintStream, a retired stream which fails is skipped
+            }
+        }
+    }
+
+    /**
+     * Mark the current thread as being in a call on the installed streams, counted against the current epoch.
+     *
+     * @return the epoch to pass to {@link #exit(Epoch)} when the call is done
+     */
+    private static Epoch enter() {
+        Epoch current = epoch;
+        for (;;) {
+            current.entries.increment();
+            final Epoch check = epoch;
+            if (check == current) {
+                break;
+            }
+            // the selector was swapped meanwhile; count against the new epoch so the swap need not wait for us
+            current.exits.increment();
+            current = check;
+        }
+        entered.set(current);
+        return current;
+    }
+
+    private static void exit(final Epoch current) {
+        current.exits.increment();
+        entered.remove();
+    }
+
+    /**
+     * A selector together with the number of calls in progress on the installed streams which use it. A swap replaces
+     * the epoch and waits for the calls counted against the previous one.
+     */
+    private static final class Epoch {
+        final StdioContextSelector selector;
+        final LongAdder entries = new LongAdder();
+        final LongAdder exits = new LongAdder();
+
+        Epoch(final StdioContextSelector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Get the number of calls in progress. Both counters only grow, so reading the exits before the entries can
+         * only overestimate the result; a result of zero means that there was a moment with no call in progress.
+         */
+        long inFlight() {
+            final long exited = exits.sum();
+            return entries.sum() - exited;
+        }
+    }
+
+    /**
+     * The permissions checked when a security manager is present. Kept in a holder class so that they are only created
+     * when they are actually checked.
+     */
+    private static final class Permissions {
+        static final Permission CREATE_CONTEXT = new RuntimePermission("createStdioContext", null);
+        static final Permission SET_CONTEXT_SELECTOR = new RuntimePermission("setStdioContextSelector", null);
+        static final Permission INSTALL = new RuntimePermission("installStdioContextSelector", null);
+    }
+
+    private static final class CaptureBuffers {
+        private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+        private final CaptureBuffer out = new CaptureBuffer();
+        private final CaptureBuffer err = new CaptureBuffer();
+        private final PrintStream outStream = new PrintStream(out, false);
+        private final PrintStream errStream = new PrintStream(err, false);
+        private StdioContext context;
+
+        /**
+         * Prepare for reuse.
+         *
+         * @return {@code true} if these buffers may be reused
+         */
+        boolean reset() {
+            context = null;
+            if (outStream.checkError() || errStream.checkError() || out.capacity() > MAX_RETAINED_SIZE
+                    || err.capacity() > MAX_RETAINED_SIZE) {
+                return false;
+            }
+            out.reset();
+            err.reset();
+            return true;
+        }
+    }
+
+    private static final class CaptureBuffer extends ByteArrayOutputStream {
+        CaptureBuffer() {
+            super(256);
+        }
+
+        int capacity() {
+            return buf.length;
         }
-        StdioContext.stdioContextSelector = stdioContextSelector;
     }
 
     private static abstract class DelegatingPrintStream extends PrintStream {
@@ -198,11 +553,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().flush();
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -210,11 +565,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().close();
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -222,11 +577,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return false;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().checkError();
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -234,11 +589,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().write(b);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -246,11 +601,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().write(buf, off, len);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -258,11 +613,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(b);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -270,11 +625,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(c);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -282,11 +637,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(i);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -294,11 +649,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(l);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -306,11 +661,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(f);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -318,11 +673,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(d);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -330,11 +685,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(s);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -342,11 +697,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(s);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -354,29 +709,35 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().print(obj);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
         public void println() {
+            if (entered.get() != null) {
+                return;
+            }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println();
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
         public void println(final boolean x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -384,11 +745,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -396,11 +757,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -408,11 +769,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -420,11 +781,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -432,11 +793,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -444,11 +805,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -456,11 +817,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -468,11 +829,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 getDelegate().println(x);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -480,11 +841,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().printf(format, args);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -492,11 +853,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().printf(l, format, args);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -504,11 +865,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().format(format, args);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -516,11 +877,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().format(l, format, args);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -528,11 +889,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().append(csq);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -540,11 +901,11 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().append(csq, start, end);
             } finally {
-                entered.remove();
+                exit(current);
             }
         }
 
@@ -552,15 +913,450 @@ public final class StdioContext {
             if (entered.get() != null) {
                 return this;
             }
+            final Epoch current = enter();
             try {
-                entered.set(Boolean.TRUE);
                 return getDelegate().append(c);
             } finally {
-                entered.remove();
+                exit(current);
+            }
+        }
+    }
+
+    private static final class LineBuffer extends ByteArrayOutputStream {
+        private static final int MAX_RETAINED_SIZE = 1 << 16;
+        private static final ThreadLocal<LineBuffer> current = new ThreadLocal<LineBuffer>();
+
+        private final PrintStream stream = new PrintStream(this, false);
+
+        LineBuffer() {
+            super(256);
+        }
+
+        static LineBuffer get() {
+            LineBuffer buffer = current.get();
+            if (buffer == null) {
+                buffer = new LineBuffer();
+                current.set(buffer);
+            }
+            return buffer;
+        }
+
+        void writeTo(final PrintStream delegate) {
+            delegate.write(buf, 0, count);
+        }
+
+        /**
+         * Discard the contents, whether or not they were written; a call which failed while rendering must not leave
+         * its text behind for the next call on this thread.
+         */
+        void release() {
+            reset();
+            if (buf.length > MAX_RETAINED_SIZE) {
+                current.remove();
             }
         }
     }
 
+    private static abstract class AtomicLinePrintStream extends DelegatingPrintStream {
+
+        public void print(final boolean b) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(b);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final char c) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(c);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final int i) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(i);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final long l) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(l);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final float f) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(f);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final double d) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(d);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final char[] s) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(s);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final String s) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(s);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void print(final Object obj) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.print(obj);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println() {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println();
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final boolean x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final char x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final int x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final long x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final float x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final double x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final char[] x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final String x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public void println(final Object x) {
+            if (entered.get() != null) {
+                return;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.println(x);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+        }
+
+        public PrintStream printf(final String format, final Object... args) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.printf(format, args);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream printf(final Locale l, final String format, final Object... args) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.printf(l, format, args);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream format(final String format, final Object... args) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.format(format, args);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream format(final Locale l, final String format, final Object... args) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.format(l, format, args);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream append(final CharSequence csq) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.append(csq);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream append(final CharSequence csq, final int start, final int end) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.append(csq, start, end);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+
+        public PrintStream append(final char c) {
+            if (entered.get() != null) {
+                return this;
+            }
+            final LineBuffer buffer = LineBuffer.get();
+            final Epoch current = enter();
+            try {
+                buffer.stream.append(c);
+                buffer.writeTo(getDelegate());
+            } finally {
+                buffer.release();
+                exit(current);
+            }
+            return this;
+        }
+    }
+
     private static abstract class DelegatingInputStream extends InputStream {
         abstract InputStream getDelegate();
 
@@ -576,6 +1372,22 @@ public final class StdioContext {
             return getDelegate().read(b, off, len);
         }
 
+        public byte[] readAllBytes() throws IOException {
+            return getDelegate().readAllBytes();
+        }
+
+        public byte[] readNBytes(final int len) throws IOException {
+            return getDelegate().readNBytes(len);
+        }
+
+        public int readNBytes(final byte[] b, final int off, final int len) throws IOException {
+            return getDelegate().readNBytes(b, off, len);
+        }
+
+        public long transferTo(final OutputStream out) throws IOException {
+            return getDelegate().transferTo(out);
+        }
+
         public long skip(final long n) throws IOException {
             return getDelegate().skip(n);
         }
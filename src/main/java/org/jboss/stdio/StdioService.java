@@ -5,11 +5,18 @@
 
 package org.jboss.stdio;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * An object which exposes the {@code StdioContext} installation methods as a service.
  */
 public final class StdioService {
 
+    private final Map<FlightRecorder, Path> flightRecorders = new ConcurrentHashMap<FlightRecorder, Path>();
+
     /**
      * Start the stdio service.
      */
@@ -18,9 +25,63 @@ public final class StdioService {
     }
 
     /**
-     * Stop the stdio service.
+     * Stop the stdio service. The registered flight recorders are dumped before the streams are uninstalled.
      */
     public void stop() {
+        try {
+            dumpFlightRecorders();
+        } catch (IOException ignored) {
+            // stopping must not fail because a dump could not be written
+        }
         StdioContext.uninstall();
     }
+
+    /**
+     * Register a flight recorder to be dumped to the given file when this service is stopped or when
+     * {@link #dumpFlightRecorders()} is called.
+     *
+     * @param recorder the flight recorder
+     * @param dumpFile the file to dump the recorder to
+     */
+    public void addFlightRecorder(final FlightRecorder recorder, final Path dumpFile) {
+        if (recorder == null) {
+            throw new NullPointerException("recorder is null");
+        }
+        if (dumpFile == null) {
+            throw new NullPointerException("dumpFile is null");
+        }
+        flightRecorders.put(recorder, dumpFile);
+    }
+
+    /**
+     * Unregister a flight recorder.
+     *
+     * @param recorder the flight recorder
+     */
+    public void removeFlightRecorder(final FlightRecorder recorder) {
+        flightRecorders.remove(recorder);
+    }
+
+    /**
+     * Dump all registered flight recorders to their files.
+     *
+     * @throws IOException if one or more recorders could not be dumped; all recorders are attempted
+     */
+    public void dumpFlightRecorders() throws IOException {
+        IOException failure = null;
+        for (Map.Entry<FlightRecorder, Path> entry : flightRecorders.entrySet()) {
+            try {
+                entry.getKey().dump(entry.getValue());
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An output stream which writes everything to several sinks. A sink which throws an exception is disabled and its
+ * failure recorded; the other sinks keep receiving data. Delivery statistics are kept per sink.
+ * <p>
+ * Sinks are written to in turn on the calling thread, so a slow synchronous sink still delays the others. Use
+ * {@link #async(int, OutputStream...)} to give each sink its own buffer and delivery thread.
+ */
+public final class TeeOutputStream extends OutputStream {
+
+    private final Sink[] sinks;
+
+    /**
+     * Construct a new instance which writes to each sink synchronously.
+     *
+     * @param sinks the sinks to write to
+     */
+    public TeeOutputStream(final OutputStream... sinks) {
+        final Sink[] array = new Sink[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            if (sinks[i] == null) {
+                throw new NullPointerException("sink " + i + " is null");
+            }
+            array[i] = new Sink(sinks[i]);
+        }
+        this.sinks = array;
+    }
+
+    /**
+     * Create a tee which delivers to each sink from its own buffer and thread. When a sink cannot keep up, the data
+     * which does not fit into its buffer is dropped for that sink only.
+     *
+     * @param capacity the buffer capacity of each sink in bytes
+     * @param sinks    the sinks to write to
+     * @return the new stream
+     * @see AsyncOutputStream#droppingNewest(OutputStream, int)
+     */
+    public static TeeOutputStream async(final int capacity, final OutputStream... sinks) {
+        final OutputStream[] async = new OutputStream[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            async[i] = AsyncOutputStream.droppingNewest(sinks[i], capacity);
+        }
+        return new TeeOutputStream(async);
+    }
+
+    /**
+     * Get the number of sinks.
+     *
+     * @return the number of sinks
+     */
+    public int getSinkCount() {
+        return sinks.length;
+    }
+
+    /**
+     * Get the number of bytes handed to a sink.
+     *
+     * @param index the index of the sink
+     * @return the number of bytes handed to the sink
+     */
+    public long getWrittenBytes(final int index) {
+        return sinks[index].written.get();
+    }
+
+    /**
+     * Get the number of bytes which were not delivered to a sink, either because it failed or because it dropped them.
+     *
+     * @param index the index of the sink
+     * @return the number of bytes lost for the sink
+     */
+    public long getLostBytes(final int index) {
+        final Sink sink = sinks[index];
+        long lost = sink.skipped.get();
+        if (sink.out instanceof AsyncOutputStream) {
+            final AsyncOutputStream async = (AsyncOutputStream) sink.out;
+            lost += async.getDroppedBytes() + async.getFailedBytes();
+        }
+        return lost;
+    }
+
+    /**
+     * Get the failure of a sink. For a synchronous sink this is the exception which disabled it; an
+     * {@link AsyncOutputStream} sink is not disabled by failures of the stream it delivers to, and its most recent
+     * {@linkplain AsyncOutputStream#getLastFailure() delivery failure} is returned instead.
+     *
+     * @param index the index of the sink
+     * @return the exception, or {@code null} if the sink has not failed
+     */
+    public Exception getFailure(final int index) {
+        final Sink sink = sinks[index];
+        final Exception failure = sink.failure;
+        if (failure == null && sink.out instanceof AsyncOutputStream) {
+            return ((AsyncOutputStream) sink.out).getLastFailure();
+        }
+        return failure;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) {
+        for (Sink sink : sinks) {
+            if (sink.failure != null) {
+                sink.skipped.incrementAndGet();
+                continue;
+            }
+            try {
+                sink.out.write(b);
+                sink.written.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                sink.fail(e, 1);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, final int off, final int len) {
+        for (Sink sink : sinks) {
+            if (sink.failure != null) {
+                sink.skipped.addAndGet(len);
+                continue;
+            }
+            try {
+                sink.out.write(b, off, len);
+                sink.written.addAndGet(len);
+            } catch (IOException | RuntimeException e) {
+                sink.fail(e, len);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void flush() {
+        for (Sink sink : sinks) {
+            if (sink.failure == null) {
+                try {
+                    sink.out.flush();
+                } catch (IOException | RuntimeException e) {
+                    sink.fail(e, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close all sinks.
+     *
+     * @throws IOException if one or more sinks could not be closed; all sinks are attempted
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Sink sink : sinks) {
+            try {
+                sink.out.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e instanceof IOException ? (IOException) e : new IOException("Failed to close a sink", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final class Sink {
+        private final OutputStream out;
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile Exception failure;
+
+        Sink(final OutputStream out) {
+            this.out = out;
+        }
+
+        void fail(final Exception e, final int len) {
+            failure = e;
+            skipped.addAndGet(len);
+        }
+    }
+}
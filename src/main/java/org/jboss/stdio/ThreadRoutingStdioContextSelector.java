@@ -0,0 +1,189 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@code org.jboss.stdio.StdioContextSelector} implementation which selects the context by the name and the thread
+ * group of the current thread. Name rules are thread name prefixes, such as {@code kafka-consumer-} (a trailing
+ * {@code *} is ignored, so {@code kafka-consumer-*} is equivalent); the longest matching prefix wins. If no name rule
+ * matches, the thread group and then its parents are looked up in the group rules. If nothing matches, the default
+ * context is selected.
+ * <p>
+ * The rules are compiled into a prefix trie and a thread group map. The result is cached per thread together with the
+ * thread name and the rules it was computed from, so a lookup normally costs one thread-local read; renaming the thread
+ * or replacing the rules causes the next lookup to be computed again.
+ */
+public final class ThreadRoutingStdioContextSelector implements StdioContextSelector {
+
+    private final StdioContext defaultContext;
+    private final ThreadLocal<Route> routes = new ThreadLocal<Route>();
+    private volatile Rules rules;
+
+    /**
+     * Construct a new instance without any rules.
+     *
+     * @param defaultContext the context to select when no rule matches (must not be {@code null})
+     */
+    public ThreadRoutingStdioContextSelector(final StdioContext defaultContext) {
+        if (defaultContext == null) {
+            throw new NullPointerException("defaultContext is null");
+        }
+        this.defaultContext = defaultContext;
+        rules = new Rules(new Node(), Collections.<ThreadGroup, StdioContext> emptyMap());
+    }
+
+    /**
+     * Replace the routing rules. Threads pick up the new rules on their next lookup.
+     *
+     * @param namePrefixes the contexts to select by thread name prefix
+     * @param threadGroups the contexts to select by thread group
+     */
+    public void setRules(final Map<String, StdioContext> namePrefixes, final Map<ThreadGroup, StdioContext> threadGroups) {
+        final TreeMap<String, StdioContext> prefixes = new TreeMap<String, StdioContext>();
+        for (Map.Entry<String, StdioContext> entry : namePrefixes.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.endsWith("*")) {
+                prefix = prefix.substring(0, prefix.length() - 1);
+            }
+            if (entry.getValue() == null) {
+                throw new NullPointerException("context for prefix " + prefix + " is null");
+            }
+            prefixes.put(prefix, entry.getValue());
+        }
+        final Map<ThreadGroup, StdioContext> groups = new IdentityHashMap<ThreadGroup, StdioContext>(threadGroups);
+        if (groups.containsValue(null)) {
+            throw new NullPointerException("context for a thread group is null");
+        }
+        rules = new Rules(Node.compile(prefixes, 0), groups);
+    }
+
+    /** {@inheritDoc} */
+    public StdioContext getStdioContext() {
+        final Thread thread = Thread.currentThread();
+        final String name = thread.getName();
+        final Rules rules = this.rules;
+        Route route = routes.get();
+        if (route != null && route.rules == rules && route.name == name) {
+            return route.context;
+        }
+        final StdioContext context = rules.match(thread, name, defaultContext);
+        if (route == null) {
+            route = new Route();
+            routes.set(route);
+        }
+        route.rules = rules;
+        route.name = name;
+        route.context = context;
+        return context;
+    }
+
+    /**
+     * Attempt to install this context selector as the current one.
+     *
+     * @see StdioContext#setStdioContextSelector(StdioContextSelector)
+     */
+    public void install() {
+        StdioContext.setStdioContextSelector(this);
+    }
+
+    private static final class Route {
+        private Rules rules;
+        private String name;
+        private StdioContext context;
+    }
+
+    private static final class Rules {
+        private final Node trie;
+        private final Map<ThreadGroup, StdioContext> groups;
+
+        Rules(final Node trie, final Map<ThreadGroup, StdioContext> groups) {
+            this.trie = trie;
+            this.groups = groups;
+        }
+
+        StdioContext match(final Thread thread, final String name, final StdioContext defaultContext) {
+            StdioContext context = trie.match(name);
+            if (context != null) {
+                return context;
+            }
+            if (!groups.isEmpty()) {
+                for (ThreadGroup group = thread.getThreadGroup(); group != null; group = group.getParent()) {
+                    context = groups.get(group);
+                    if (context != null) {
+                        return context;
+                    }
+                }
+            }
+            return defaultContext;
+        }
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private StdioContext context;
+
+        /**
+         * Compile the given prefixes, which all share their first {@code depth} characters, into a trie.
+         */
+        static Node compile(final TreeMap<String, StdioContext> prefixes, final int depth) {
+            final Node node = new Node();
+            final TreeMap<Character, TreeMap<String, StdioContext>> next = new TreeMap<Character, TreeMap<String, StdioContext>>();
+            for (Map.Entry<String, StdioContext> entry : prefixes.entrySet()) {
+                final String prefix = entry.getKey();
+                if (prefix.length() == depth) {
+                    node.context = entry.getValue();
+                } else {
+                    final Character key = Character.valueOf(prefix.charAt(depth));
+                    TreeMap<String, StdioContext> group = next.get(key);
+                    if (group == null) {
+                        group = new TreeMap<String, StdioContext>();
+                        next.put(key, group);
+                    }
+                    group.put(prefix, entry.getValue());
+                }
+            }
+            if (!next.isEmpty()) {
+                node.keys = new char[next.size()];
+                node.children = new Node[next.size()];
+                int i = 0;
+                for (Map.Entry<Character, TreeMap<String, StdioContext>> entry : next.entrySet()) {
+                    node.keys[i] = entry.getKey().charValue();
+                    node.children[i++] = compile(entry.getValue(), depth + 1);
+                }
+            }
+            return node;
+        }
+
+        /**
+         * Find the context of the longest prefix of the given name.
+         */
+        StdioContext match(final String name) {
+            Node node = this;
+            StdioContext match = context;
+            for (int i = 0; i < name.length(); i++) {
+                final int idx = Arrays.binarySearch(node.keys, name.charAt(i));
+                if (idx < 0) {
+                    break;
+                }
+                node = node.children[idx];
+                if (node.context != null) {
+                    match = node.context;
+                }
+            }
+            return match;
+        }
+    }
+}
@@ -156,4 +156,22 @@ public class WriterOutputStream extends OutputStream {
     public void close() throws IOException {
         flush();
     }
+
+    /**
+     * Flush this stream and, if it writes to an {@link AbstractLoggingWriter}, log the partial line buffered there.
+     *
+     * @return the partial line, or {@code null} if there was none
+     * @throws IOException if the flush fails
+     */
+    String flushPartialLine() throws IOException {
+        synchronized (decoder) {
+            finish();
+            writer.flush();
+            Writer writer = this.writer;
+            if (writer instanceof AnsiStrippingWriter) {
+                writer = ((AnsiStrippingWriter) writer).getDelegate();
+            }
+            return writer instanceof AbstractLoggingWriter ? ((AbstractLoggingWriter) writer).flushPartialLine() : null;
+        }
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Access to the file descriptor calls needed by {@link NativeOutputCapture}, through the foreign function API. Only
+ * Linux is supported. The JVM should be started with {@code --enable-native-access} for the module or class path which
+ * contains this library, otherwise it warns on first use.
+ */
+final class NativeFileDescriptors {
+
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET = CALL_STATE.byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+    private static final int EINTR = 4;
+
+    private static final MethodHandle PIPE;
+    private static final MethodHandle DUP;
+    private static final MethodHandle DUP2;
+    private static final MethodHandle CLOSE;
+    private static final MethodHandle WRITE;
+
+    static {
+        MethodHandle pipe = null;
+        MethodHandle dup = null;
+        MethodHandle dup2 = null;
+        MethodHandle close = null;
+        MethodHandle write = null;
+        if (System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("linux")) {
+            final Linker linker = Linker.nativeLinker();
+            final SymbolLookup libc = linker.defaultLookup();
+            final Linker.Option errno = Linker.Option.captureCallState("errno");
+            pipe = downcall(linker, libc, "pipe", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS),
+                    errno);
+            dup = downcall(linker, libc, "dup", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT),
+                    errno);
+            dup2 = downcall(linker, libc, "dup2",
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT), errno);
+            close = downcall(linker, libc, "close", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT),
+                    errno);
+            write = downcall(linker, libc, "write", FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT,
+                    ValueLayout.ADDRESS, ValueLayout.JAVA_LONG), errno);
+        }
+        if (pipe == null || dup == null || dup2 == null || close == null || write == null) {
+            pipe = dup = dup2 = close = write = null;
+        }
+        PIPE = pipe;
+        DUP = dup;
+        DUP2 = dup2;
+        CLOSE = close;
+        WRITE = write;
+    }
+
+    private NativeFileDescriptors() {
+    }
+
+    private static MethodHandle downcall(final Linker linker, final SymbolLookup lookup, final String name,
+            final FunctionDescriptor descriptor, final Linker.Option option) {
+        final Optional<MemorySegment> symbol = lookup.find(name);
+        return symbol.isPresent() ? linker.downcallHandle(symbol.get(), descriptor, option) : null;
+    }
+
+    static boolean isSupported() {
+        return PIPE != null;
+    }
+
+    static int[] pipe() throws IOException {
+        check();
+        try (Arena arena = Arena.ofConfined()) {
+            final MemorySegment state = arena.allocate(CALL_STATE.byteSize(), CALL_STATE.byteAlignment());
+            final MemorySegment fds = arena.allocate(ValueLayout.JAVA_INT.byteSize() * 2L,
+                    ValueLayout.JAVA_INT.byteAlignment());
+            final int result = (int) PIPE.invokeExact(state, fds);
+            if (result == -1) {
+                throw failure("pipe", state);
+            }
+            return new int[] { fds.getAtIndex(ValueLayout.JAVA_INT, 0L), fds.getAtIndex(ValueLayout.JAVA_INT, 1L) };
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int dup(final int fd) throws IOException {
+        check();
+        try (Arena arena = Arena.ofConfined()) {
+            final MemorySegment state = arena.allocate(CALL_STATE.byteSize(), CALL_STATE.byteAlignment());
+            final int result = (int) DUP.invokeExact(state, fd);
+            if (result == -1) {
+                throw failure("dup", state);
+            }
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void dup2(final int fd, final int target) throws IOException {
+        check();
+        try (Arena arena = Arena.ofConfined()) {
+            final MemorySegment state = arena.allocate(CALL_STATE.byteSize(), CALL_STATE.byteAlignment());
+            final int result = (int) DUP2.invokeExact(state, fd, target);
+            if (result == -1) {
+                throw failure("dup2", state);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void close(final int fd) throws IOException {
+        check();
+        try (Arena arena = Arena.ofConfined()) {
+            final MemorySegment state = arena.allocate(CALL_STATE.byteSize(), CALL_STATE.byteAlignment());
+            final int result = (int) CLOSE.invokeExact(state, fd);
+            if (result == -1) {
+                throw failure("close", state);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void write(final int fd, final byte[] b, final int off, final int len) throws IOException {
+        check();
+        try (Arena arena = Arena.ofConfined()) {
+            final MemorySegment state = arena.allocate(CALL_STATE.byteSize(), CALL_STATE.byteAlignment());
+            final MemorySegment data = arena.allocate(Math.max(1, len), 1L);
+            MemorySegment.copy(b, off, data, ValueLayout.JAVA_BYTE, 0L, len);
+            long written = 0L;
+            while (written < len) {
+                final long result = (long) WRITE.invokeExact(state, fd, data.asSlice(written), (long) len - written);
+                if (result == -1L) {
+                    if (state.get(ValueLayout.JAVA_INT, ERRNO_OFFSET) == EINTR) {
+                        continue;
+                    }
+                    throw failure("write", state);
+                }
+                written += result;
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void check() {
+        if (PIPE == null) {
+            throw new UnsupportedOperationException("Native file descriptor access is only supported on Linux");
+        }
+    }
+
+    private static IOException failure(final String call, final MemorySegment state) {
+        return new IOException(call + " failed with errno " + state.get(ValueLayout.JAVA_INT, ERRNO_OFFSET));
+    }
+}
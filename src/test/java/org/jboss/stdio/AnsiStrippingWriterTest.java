@@ -0,0 +1,51 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link AnsiStrippingWriter}.
+ */
+public class AnsiStrippingWriterTest {
+
+    @Test
+    public void colorsAreRemoved() throws IOException {
+        assertEquals("red plain\n", strip("\u001b[31mred\u001b[0m plain\n"));
+    }
+
+    @Test
+    public void unterminatedSequencesEndAtTheLineFeed() throws IOException {
+        assertEquals("\nHello", strip("\u001b[31\nHello"));
+        assertEquals("\nHello", strip("\u001b\nHello"));
+        assertEquals("\nHello", strip("\u001b(\nHello"));
+        assertEquals("\nHello", strip("\u001b]0;title\nHello"));
+    }
+
+    @Test
+    public void sequencesMaySpanWrites() throws IOException {
+        final StringWriter out = new StringWriter();
+        final AnsiStrippingWriter writer = new AnsiStrippingWriter(out);
+        writer.write("a\u001b[");
+        writer.write("1;3");
+        writer.write("1mb\n");
+        writer.flush();
+        assertEquals("ab\n", out.toString());
+    }
+
+    private static String strip(final String text) throws IOException {
+        final StringWriter out = new StringWriter();
+        final AnsiStrippingWriter writer = new AnsiStrippingWriter(out);
+        writer.write(text);
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link AsyncOutputStream}.
+ */
+public class AsyncOutputStreamTest {
+
+    @Test
+    public void blockTimeoutBoundsTheWholeWrite() throws IOException {
+        final OutputStream slow = new OutputStream() {
+            public void write(final int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) {
+                sleep(20L);
+            }
+        };
+        final AsyncOutputStream out = AsyncOutputStream.blocking(slow, 16, 50L, TimeUnit.MILLISECONDS);
+        try {
+            final long start = System.nanoTime();
+            out.write(new byte[1600]);
+            final long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(500L), "write blocked for " + elapsed + " ns");
+            assertTrue(out.getDroppedBytes() > 0L);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void uncheckedSinkFailureIsRecordedAndDeliveryContinues() throws Exception {
+        final ByteArrayOutputStream delivered = new ByteArrayOutputStream();
+        final AtomicBoolean failNext = new AtomicBoolean(true);
+        final OutputStream flaky = new OutputStream() {
+            public void write(final int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) {
+                if (failNext.getAndSet(false)) {
+                    throw new IllegalStateException("broken");
+                }
+                delivered.write(b, off, len);
+            }
+        };
+        final AsyncOutputStream out = AsyncOutputStream.droppingNewest(flaky, 64);
+        try {
+            out.write("lost".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(out.drain(5L, TimeUnit.SECONDS));
+            out.write("kept".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(out.drain(5L, TimeUnit.SECONDS));
+            assertTrue(out.getLastFailure() instanceof IllegalStateException);
+            assertEquals(4L, out.getFailedBytes());
+            assertEquals("kept", delivered.toString("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void closeLeavesTheSinkToTheDeliveryThread() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicBoolean closedWhileWriting = new AtomicBoolean();
+        final AtomicBoolean inWrite = new AtomicBoolean();
+        final OutputStream stuck = new OutputStream() {
+            public void write(final int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) {
+                inWrite.set(true);
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                inWrite.set(false);
+            }
+
+            public void close() {
+                closedWhileWriting.set(inWrite.get());
+                closed.countDown();
+            }
+        };
+        final AsyncOutputStream out = AsyncOutputStream.droppingNewest(stuck, 64);
+        out.write('x');
+        assertTrue(writing.await(5L, TimeUnit.SECONDS));
+        out.close();
+        assertEquals(1L, closed.getCount(), "sink closed while being written to");
+        release.countDown();
+        assertTrue(closed.await(5L, TimeUnit.SECONDS));
+        assertFalse(closedWhileWriting.get());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link CompressedRollingOutputStream}.
+ */
+public class CompressedRollingOutputStreamTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restartContinuesTheSequence() throws IOException {
+        run("first\n");
+        run("second\n");
+        assertEquals("first\n", read("test.00000001.log.gz"));
+        assertEquals("second\n", read("test.00000002.log.gz"));
+    }
+
+    @Test
+    public void retentionCountsFilesOfEarlierRuns() throws IOException {
+        run("first\n");
+        run("second\n");
+        run("third\n");
+        assertFalse(Files.exists(directory.resolve("test.00000001.log.gz")));
+        assertEquals("second\n", read("test.00000002.log.gz"));
+        assertEquals("third\n", read("test.00000003.log.gz"));
+    }
+
+    private void run(final String text) throws IOException {
+        try (CompressedRollingOutputStream out = new CompressedRollingOutputStream(directory, "test", 1 << 20, 0L,
+                TimeUnit.SECONDS, 2, Deflater.DEFAULT_COMPRESSION)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private String read(final String name) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(name)))) {
+            in.transferTo(out);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
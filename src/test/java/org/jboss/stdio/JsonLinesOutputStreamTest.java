@@ -0,0 +1,53 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link JsonLinesOutputStream}.
+ */
+public class JsonLinesOutputStreamTest {
+
+    @Test
+    public void utf8IsCopied() throws IOException {
+        final String json = encode(StandardCharsets.UTF_8, "Gr\u00fc\u00dfe \"q\" \\ \t");
+        assertTrue(json.endsWith("\"message\":\"Gr\u00fc\u00dfe \\\"q\\\" \\\\ \\t\"}\n"), json);
+    }
+
+    @Test
+    public void otherCharsetsAreDecoded() throws IOException {
+        final String json = encode(Charset.forName("windows-1252"), "Gr\u00fc\u00dfe \u20ac");
+        assertTrue(json.endsWith("\"message\":\"Gr\\u00fc\\u00dfe \\u20ac\"}\n"), json);
+        final String latin1 = encode(StandardCharsets.ISO_8859_1, "caf\u00e9");
+        assertTrue(latin1.endsWith("\"message\":\"caf\\u00e9\"}\n"), latin1);
+    }
+
+    @Test
+    public void charsetsWithWideLineTerminatorsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new JsonLinesOutputStream(
+                Channels.newChannel(new ByteArrayOutputStream()), "c", "INFO", "out", StandardCharsets.UTF_16));
+    }
+
+    private static String encode(final Charset charset, final String line) throws IOException {
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(new JsonLinesOutputStream(Channels.newChannel(json), "c", "INFO", "out",
+                charset), false, charset.name())) {
+            out.println(line);
+        }
+        return new String(json.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link LineSequencer}.
+ */
+public class LineSequencerTest {
+
+    @Test
+    public void flushWritesThePartialLine() throws IOException {
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(new LineSequencer().stamp(sink), false, "US-ASCII");
+        out.print("Password: ");
+        out.flush();
+        assertEquals("#1 Password: ", sink.toString("US-ASCII"));
+        out.println("secret");
+        out.println("done");
+        out.flush();
+        assertEquals("#1 Password: #2 secret\n#3 done\n", sink.toString("US-ASCII"));
+    }
+
+    @Test
+    public void longLinesAreWrittenInFragments() throws IOException {
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final OutputStream out = new LineSequencer().stamp(sink);
+        final byte[] line = new byte[(1 << 16) + 10];
+        Arrays.fill(line, (byte) 'x');
+        line[line.length - 1] = '\n';
+        out.write(line);
+        final String written = sink.toString("US-ASCII");
+        assertTrue(written.startsWith("#1 xxx"));
+        assertTrue(written.contains("#2 xxxxxxxxx\n"));
+        assertEquals(line.length + 6, written.getBytes(StandardCharsets.US_ASCII).length);
+    }
+}
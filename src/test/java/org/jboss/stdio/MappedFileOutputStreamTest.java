@@ -0,0 +1,54 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link MappedFileOutputStream}.
+ */
+public class MappedFileOutputStreamTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restartContinuesTheSequence() throws IOException {
+        run("first\n");
+        run("second\n");
+        assertEquals("first\n", read("test.00000001.log"));
+        assertEquals("second\n", read("test.00000002.log"));
+    }
+
+    @Test
+    public void retentionCountsSegmentsOfEarlierRuns() throws IOException {
+        run("first\n");
+        run("second\n");
+        run("third\n");
+        assertFalse(Files.exists(directory.resolve("test.00000001.log")));
+        assertEquals("second\n", read("test.00000002.log"));
+        assertEquals("third\n", read("test.00000003.log"));
+    }
+
+    private void run(final String text) throws IOException {
+        try (MappedFileOutputStream out = new MappedFileOutputStream(directory, "test", 4096, 2)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private String read(final String name) throws IOException {
+        return new String(Files.readAllBytes(directory.resolve(name)), StandardCharsets.US_ASCII);
+    }
+}
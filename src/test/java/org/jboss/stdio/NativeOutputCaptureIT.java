@@ -0,0 +1,48 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link NativeOutputCapture}. These run against the multi-release jar, since the implementation for Java 22
+ * and later is only found there; see the {@code java22} profile.
+ */
+public class NativeOutputCaptureIT {
+
+    @Test
+    public void capturesDescriptorWrites() throws Exception {
+        Assumptions.assumeTrue(NativeOutputCapture.isSupported(), "requires Linux and Java 22 or later");
+        final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        final NativeOutputCapture capture = NativeOutputCapture.start(new PrintStream(captured, true, "UTF-8"), null);
+        try {
+            final FileOutputStream fd1 = new FileOutputStream(FileDescriptor.out);
+            fd1.write("direct\n".getBytes(StandardCharsets.UTF_8));
+            fd1.write("partial".getBytes(StandardCharsets.UTF_8));
+            final Process child = new ProcessBuilder("/bin/sh", "-c", "echo child; echo to-original-err >&2")
+                    .inheritIO().start();
+            assertEquals(0, child.waitFor());
+        } finally {
+            capture.stop();
+        }
+        final String text = captured.toString("UTF-8");
+        assertTrue(text.contains("direct\n"), text);
+        assertTrue(text.contains("child\n"), text);
+        assertTrue(text.contains("partial"), text);
+        // the error output went to the original descriptor 2, but was counted
+        assertTrue(capture.getCapturedBytes() >= captured.size() + "to-original-err\n".length());
+    }
+}
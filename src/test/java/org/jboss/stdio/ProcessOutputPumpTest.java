@@ -0,0 +1,43 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link ProcessOutputPump}.
+ */
+public class ProcessOutputPumpTest {
+
+    @AfterEach
+    public void restoreSelector() {
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(StdioContext.create(System.in,
+                System.out, System.err)));
+    }
+
+    @Test
+    public void outputOfBackgroundGrandchildIsPumped() throws Exception {
+        Assumptions.assumeTrue(new File("/bin/sh").canExecute(), "requires /bin/sh");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(StdioContext.create(
+                NullInputStream.getInstance(), out, err)));
+        // the direct child outlives the start of the readers, as attach requires; the grandchild writes after it exits
+        final Process process = new ProcessBuilder("/bin/sh", "-c",
+                "(sleep 0.5; echo late; echo late-err >&2) & echo early; sleep 0.1").start();
+        ProcessOutputPump.attach(process, "[p] ").get(10, TimeUnit.SECONDS);
+        assertEquals("[p] early\n[p] late\n", out.toString());
+        assertEquals("[p] late-err\n", err.toString());
+    }
+}
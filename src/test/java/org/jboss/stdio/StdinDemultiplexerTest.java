@@ -0,0 +1,64 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link StdinDemultiplexer}.
+ */
+public class StdinDemultiplexerTest {
+
+    @Test
+    public void singleByteReadsSeeEveryDispatchedByte() throws IOException {
+        final PipedOutputStream source = new PipedOutputStream();
+        // a capacity smaller than the input, so the reader thread has to wait for the consumer
+        final StdinDemultiplexer demultiplexer = new StdinDemultiplexer(new PipedInputStream(source), 8,
+                StandardCharsets.US_ASCII);
+        final InputStream dispatch = demultiplexer.openDispatch(line -> line.startsWith("b"));
+        final Thread writer = new Thread(() -> {
+            try (PipedOutputStream out = source) {
+                out.write("a1\nb2\u00ff\nb3\n".getBytes(StandardCharsets.ISO_8859_1));
+            } catch (IOException ignored) {
+            }
+        });
+        writer.start();
+        final ByteArrayOutputStream dispatched = new ByteArrayOutputStream();
+        for (int b; (b = dispatch.read()) != -1;) {
+            dispatched.write(b);
+        }
+        assertEquals("b2\u00ff\nb3\n", dispatched.toString("ISO-8859-1"));
+        assertEquals(1L, demultiplexer.getDiscardedLines());
+        demultiplexer.close();
+    }
+
+    @Test
+    public void singleAndBulkReadsInterleave() throws IOException {
+        final PipedOutputStream source = new PipedOutputStream();
+        final StdinDemultiplexer demultiplexer = new StdinDemultiplexer(new PipedInputStream(source));
+        final InputStream broadcast = demultiplexer.openBroadcast();
+        source.write("hello\n".getBytes(StandardCharsets.US_ASCII));
+        source.close();
+        assertEquals('h', broadcast.read());
+        final byte[] rest = new byte[16];
+        int cnt = 0;
+        for (int n; (n = broadcast.read(rest, cnt, rest.length - cnt)) != -1;) {
+            cnt += n;
+        }
+        assertEquals("ello\n", new String(rest, 0, cnt, StandardCharsets.US_ASCII));
+        assertEquals(-1, broadcast.read());
+        demultiplexer.close();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.IllegalFormatException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the streams installed by {@link StdioContext#install(boolean)} in atomic-line mode.
+ */
+public class StdioContextAtomicLinesTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void install() {
+        StdioContext.install(true);
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(StdioContext.create(
+                NullInputStream.getInstance(), out, err)));
+    }
+
+    @AfterEach
+    public void uninstall() {
+        StdioContext.uninstall();
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(StdioContext.create(System.in,
+                System.out, System.err)));
+    }
+
+    @Test
+    public void failedPrintfLeavesNothingBehind() {
+        assertThrows(IllegalFormatException.class, () -> System.out.printf("abc %d%n", "x"));
+        System.err.println("next");
+        assertEquals("", out.toString());
+        assertEquals("next" + System.lineSeparator(), err.toString());
+    }
+
+    @Test
+    public void failedRenderingLeavesNothingBehind() {
+        final Object broken = new Object() {
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> System.out.format("abc %s", broken));
+        assertThrows(IllegalStateException.class, () -> System.out.println(broken));
+        System.out.println("next");
+        assertEquals("next" + System.lineSeparator(), out.toString());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link StdioContext#swapStdioContextSelector(StdioContextSelector, long, TimeUnit, StdioContext...)}.
+ */
+public class StdioContextSwapTest {
+
+    private final ByteArrayOutputStream newOut = new ByteArrayOutputStream();
+    private StdioContext newContext;
+
+    @BeforeEach
+    public void install() {
+        newContext = StdioContext.create(NullInputStream.getInstance(), newOut, newOut);
+        StdioContext.install();
+    }
+
+    @AfterEach
+    public void uninstall() {
+        StdioContext.uninstall();
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(StdioContext.create(System.in,
+                System.out, System.err)));
+    }
+
+    @Test
+    public void nestedCallsKeepTheEpochBalanced() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StdioContext context = StdioContext.create(NullInputStream.getInstance(), out, out);
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(context));
+        final Object nested = new Object() {
+            public String toString() {
+                System.out.println();
+                System.out.println(true);
+                return "outer";
+            }
+        };
+        System.out.print(nested);
+        System.out.println(nested);
+        assertEquals("outerouter" + System.lineSeparator(), out.toString());
+
+        final long start = System.nanoTime();
+        final SelectorSwapResult result = StdioContext.swapStdioContextSelector(
+                new SimpleStdioContextSelector(newContext), 5, TimeUnit.SECONDS, context);
+        assertTrue(result.isQuiescent());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "swap waited for a call which had ended");
+    }
+
+    @Test
+    public void swapDuringWriteWaitsForTheWriter() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final OutputStream slow = new OutputStream() {
+            public void write(final int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (written) {
+                    written.write(b, off, len);
+                }
+            }
+        };
+        final StdioContext slowContext = StdioContext.create(NullInputStream.getInstance(), slow, slow);
+        StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(slowContext));
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                System.out.print("slow");
+            }
+        });
+        writer.start();
+        writing.await();
+
+        final long start = System.nanoTime();
+        SelectorSwapResult result = StdioContext.swapStdioContextSelector(new SimpleStdioContextSelector(newContext),
+                50, TimeUnit.MILLISECONDS, slowContext);
+        assertFalse(result.isQuiescent());
+        assertEquals(1L, result.getInFlightCalls());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "swap exceeded its timeout");
+
+        // new calls go to the new context without waiting for the writer
+        System.out.print("fast");
+        assertEquals("fast", newOut.toString());
+
+        release.countDown();
+        writer.join();
+        synchronized (written) {
+            assertEquals("slow", written.toString());
+        }
+
+        result = StdioContext.swapStdioContextSelector(new SimpleStdioContextSelector(newContext), 5,
+                TimeUnit.SECONDS, newContext);
+        assertTrue(result.isQuiescent());
+    }
+
+    @Test
+    public void partialLinesAreLoggedAndReported() {
+        final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+        final Logger logger = Logger.getLogger(StdioContextSwapTest.class.getName());
+        logger.setUseParentHandlers(false);
+        final Handler handler = new Handler() {
+            public void publish(final LogRecord record) {
+                records.add(record.getMessage());
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            final StdioContext context = StdioContext.create(NullInputStream.getInstance(),
+                    new LoggingOutputStream(logger, Level.INFO), new LoggingOutputStream(logger, Level.WARNING));
+            StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(context));
+            System.out.println("complete");
+            System.out.print("partial");
+            final SelectorSwapResult result = StdioContext.swapStdioContextSelector(
+                    new SimpleStdioContextSelector(newContext), 5, TimeUnit.SECONDS, context);
+            assertTrue(result.isQuiescent());
+            assertEquals(Collections.singletonList("partial"), result.getPartialLines());
+            assertEquals(List.of("complete", "partial"), records);
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    @Test
+    public void sharedStreamsKeepTheirPartialLine() {
+        final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+        final String category = StdioContextSwapTest.class.getName() + ".shared";
+        final Logger logger = Logger.getLogger(category);
+        logger.setUseParentHandlers(false);
+        final Handler handler = new Handler() {
+            public void publish(final LogRecord record) {
+                records.add(record.getMessage());
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            final StdioContext retired = StdioContext.createLogging(NullInputStream.getInstance(), category, Level.INFO,
+                    category, Level.WARNING);
+            final StdioContext live = StdioContext.createLogging(NullInputStream.getInstance(), category, Level.INFO,
+                    category, Level.WARNING);
+            StdioContext.setStdioContextSelector(new SimpleStdioContextSelector(live));
+            System.out.print("half of a ");
+            final SelectorSwapResult result = StdioContext.swapStdioContextSelector(
+                    new SimpleStdioContextSelector(live), 5, TimeUnit.SECONDS, retired);
+            assertTrue(result.getPartialLines().isEmpty());
+            System.out.println("line");
+            assertEquals(Collections.singletonList("half of a line"), records);
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright The JBoss Logging STDIO Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.jboss.stdio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link TeeOutputStream}.
+ */
+public class TeeOutputStreamTest {
+
+    private static final OutputStream BROKEN = new OutputStream() {
+        public void write(final int b) {
+            throw new IllegalStateException("broken");
+        }
+
+        public void write(final byte[] b, final int off, final int len) {
+            throw new IllegalStateException("broken");
+        }
+    };
+
+    @Test
+    public void uncheckedFailureDisablesOnlyThatSink() throws IOException {
+        final ByteArrayOutputStream healthy = new ByteArrayOutputStream();
+        final TeeOutputStream tee = new TeeOutputStream(BROKEN, healthy);
+        tee.write("one ".getBytes(StandardCharsets.US_ASCII));
+        tee.write("two".getBytes(StandardCharsets.US_ASCII));
+        tee.flush();
+        assertTrue(tee.getFailure(0) instanceof IllegalStateException);
+        assertEquals(7L, tee.getLostBytes(0));
+        assertNull(tee.getFailure(1));
+        assertEquals("one two", healthy.toString("US-ASCII"));
+    }
+
+    @Test
+    public void asyncSinkFailureIsReported() throws Exception {
+        final AsyncOutputStream async = AsyncOutputStream.droppingNewest(BROKEN, 64);
+        final TeeOutputStream tee = new TeeOutputStream(async);
+        try {
+            for (int i = 0; i < 3; i++) {
+                tee.write("12345678".getBytes(StandardCharsets.US_ASCII));
+                assertTrue(async.drain(5L, TimeUnit.SECONDS));
+            }
+            assertTrue(tee.getFailure(0) instanceof IllegalStateException);
+            assertEquals(24L, tee.getLostBytes(0));
+        } finally {
+            tee.close();
+        }
+    }
+}